@@ -17,7 +17,11 @@ public class AppLog {
   private final String message;
 
   public AppLog(String message) {
-    this.timestamp = getCurrentTimeStamp();
+    this(System.currentTimeMillis(), message);
+  }
+
+  public AppLog(long timestamp, String message) {
+    this.timestamp = timestamp;
     this.message = message;
   }
 
@@ -33,10 +37,6 @@ public class AppLog {
     return "[" + getFormattedTimeStamp() + "] " + message;
   }
 
-  private Long getCurrentTimeStamp() {
-    return System.currentTimeMillis();
-  }
-
   private String getFormattedTimeStamp() {
     return formatDate(timestamp);
   }
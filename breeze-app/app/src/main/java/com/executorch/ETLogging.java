@@ -9,40 +9,52 @@
 package com.executorch;
 
 import android.app.Application;
-import android.util.Log;
 
+import java.io.File;
 import java.util.ArrayList;
 
 public class ETLogging extends Application {
-  private static ETLogging singleton;
+  private static final String TAG = "ETLogging";
+  private static final int LOG_CAPACITY = 2048;
+  private static final long LOG_FILE_BYTES = 512 * 1024;
+  private static final int LOG_FILES = 3;
 
-  private ArrayList<AppLog> logs;
+  // Bounded and safe to write from any thread; see LogBuffer
+  private static final LogBuffer logs = new LogBuffer(LOG_CAPACITY, LogBuffer.DEBUG);
+  private static ETLogging singleton;
 
   @Override
   public void onCreate() {
     super.onCreate();
     singleton = this;
-    if (logs == null) { // We don't have existing sharedPreference stored
-      logs = new ArrayList<>();
-    }
+    logs.startFileFlush(new File(getFilesDir(), "logs"), LOG_FILE_BYTES, LOG_FILES);
   }
 
   public static ETLogging getInstance() {
     return singleton;
   }
 
+  public static LogBuffer getLogBuffer() {
+    return logs;
+  }
+
   public void log(String message) {
-    AppLog appLog = new AppLog(message);
-    logs.add(appLog);
-    Log.d("ETLogging", appLog.getMessage());
+    logs.log(LogBuffer.DEBUG, TAG, message);
+  }
+
+  public void log(int level, String tag, String message) {
+    logs.log(level, tag, message);
   }
 
   public ArrayList<AppLog> getLogs() {
-    return logs;
+    ArrayList<AppLog> result = new ArrayList<>();
+    for (LogBuffer.Entry entry : logs.snapshot()) {
+      result.add(new AppLog(entry.timestamp, entry.message));
+    }
+    return result;
   }
 
   public void clearLogs() {
     logs.clear();
   }
-
 }
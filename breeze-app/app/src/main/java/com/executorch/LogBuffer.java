@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.executorch;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-capacity log buffer that many threads can write to without locking.
+ *
+ * <p>Each entry claims a slot with an atomic counter, so writers never block each other or
+ * wait for I/O. Once the buffer is full the oldest entries are overwritten. Messages below
+ * the minimum level are discarded before any string is built. A background thread appends
+ * new entries to a log file, rotating it when it grows too large, so logs survive a crash
+ * without slowing down the inference threads.
+ */
+public class LogBuffer {
+  public static final int VERBOSE = Log.VERBOSE;
+  public static final int DEBUG = Log.DEBUG;
+  public static final int INFO = Log.INFO;
+  public static final int WARN = Log.WARN;
+  public static final int ERROR = Log.ERROR;
+
+  private static final String TAG = "LogBuffer";
+  private static final String LOG_FILE = "app.log";
+  private static final long FLUSH_INTERVAL_MS = 2000;
+
+  public static class Entry {
+    public final long timestamp;
+    public final int level;
+    public final String tag;
+    public final String message;
+
+    Entry(long timestamp, int level, String tag, String message) {
+      this.timestamp = timestamp;
+      this.level = level;
+      this.tag = tag;
+      this.message = message;
+    }
+  }
+
+  private final int capacity;
+  private final AtomicReferenceArray<Entry> entries;
+  private final AtomicLongArray sequences;
+  private final AtomicLong nextSequence = new AtomicLong();
+  private volatile int minLevel;
+
+  // File flushing
+  private final Object flushLock = new Object();
+  private File logDir;
+  private long maxFileBytes;
+  private int maxFiles;
+  private Thread flushThread;
+  private long flushedSequence = 0;
+  private long droppedCount = 0;
+
+  public LogBuffer(int capacity, int minLevel) {
+    this.capacity = capacity;
+    this.entries = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    this.minLevel = minLevel;
+    clear();
+  }
+
+  public void setMinLevel(int level) {
+    minLevel = level;
+  }
+
+  public boolean isLoggable(int level) {
+    return level >= minLevel;
+  }
+
+  public void log(int level, String tag, String message) {
+    if (level < minLevel) {
+      return;
+    }
+    append(level, tag, message);
+  }
+
+  /** Formats the message only if the level is enabled. */
+  public void log(int level, String tag, String format, Object arg) {
+    if (level < minLevel) {
+      return;
+    }
+    append(level, tag, String.format(Locale.US, format, arg));
+  }
+
+  /** Formats the message only if the level is enabled. */
+  public void log(int level, String tag, String format, Object arg1, Object arg2) {
+    if (level < minLevel) {
+      return;
+    }
+    append(level, tag, String.format(Locale.US, format, arg1, arg2));
+  }
+
+  private void append(int level, String tag, String message) {
+    long sequence = nextSequence.getAndIncrement();
+    int slot = (int) (sequence % capacity);
+    sequences.set(slot, -1); // Invalid while the slot is rewritten
+    entries.set(slot, new Entry(System.currentTimeMillis(), level, tag, message));
+    sequences.set(slot, sequence);
+    Log.println(level, tag, message);
+
+    Thread flusher = flushThread;
+    if (level >= ERROR && flusher != null) {
+      // Errors often precede a crash, so they are written out right away
+      LockSupport.unpark(flusher);
+    }
+  }
+
+  /** Returns the buffered entries, oldest first. */
+  public List<Entry> snapshot() {
+    long last = nextSequence.get();
+    List<Entry> result = new ArrayList<>();
+    for (long sequence = Math.max(0, last - capacity); sequence < last; sequence++) {
+      Entry entry = read(sequence);
+      if (entry != null) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  /** Returns the entry with this sequence number, or null if it was overwritten or is being written. */
+  private Entry read(long sequence) {
+    int slot = (int) (sequence % capacity);
+    if (sequences.get(slot) != sequence) {
+      return null;
+    }
+    Entry entry = entries.get(slot);
+    return sequences.get(slot) == sequence ? entry : null;
+  }
+
+  public void clear() {
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, -1);
+    }
+  }
+
+  /**
+   * Starts appending entries to {@code dir/app.log} on a background thread. When the file
+   * exceeds {@code maxFileBytes} it is renamed to app.log.1 and older files shift up, keeping
+   * at most {@code maxFiles} files.
+   */
+  public synchronized void startFileFlush(File dir, long maxFileBytes, int maxFiles) {
+    if (flushThread != null) {
+      return;
+    }
+    if (!dir.exists() && !dir.mkdirs()) {
+      Log.w(TAG, "Cannot create log directory " + dir);
+      return;
+    }
+    this.logDir = dir;
+    this.maxFileBytes = maxFileBytes;
+    this.maxFiles = maxFiles;
+    synchronized (flushLock) {
+      flushedSequence = nextSequence.get() > capacity ? nextSequence.get() - capacity : 0;
+    }
+
+    Thread thread =
+        new Thread(
+            () -> {
+              while (!Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+                flush();
+              }
+            },
+            "log-flush");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    flushThread = thread;
+    thread.start();
+
+    // Write out what is buffered before the process dies
+    Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(
+        (crashedThread, throwable) -> {
+          append(ERROR, TAG, "Uncaught exception in " + crashedThread.getName() + ": "
+              + Log.getStackTraceString(throwable));
+          flush();
+          if (previous != null) {
+            previous.uncaughtException(crashedThread, throwable);
+          }
+        });
+  }
+
+  /** Appends entries written since the last flush to the log file. */
+  public void flush() {
+    if (logDir == null) {
+      return;
+    }
+    synchronized (flushLock) {
+      long last = nextSequence.get();
+      if (last == flushedSequence) {
+        return;
+      }
+      long first = flushedSequence;
+      if (last - first > capacity) {
+        // Writers lapped the flusher; the overwritten entries are lost
+        droppedCount += last - first - capacity;
+        first = last - capacity;
+      }
+
+      File file = new File(logDir, LOG_FILE);
+      SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+      try (Writer writer =
+          new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+        for (long sequence = first; sequence < last; sequence++) {
+          Entry entry = read(sequence);
+          if (entry == null) {
+            continue;
+          }
+          writer.write(formatter.format(new Date(entry.timestamp)));
+          writer.write(' ');
+          writer.write(levelLetter(entry.level));
+          writer.write('/');
+          writer.write(entry.tag);
+          writer.write(": ");
+          writer.write(entry.message);
+          writer.write('\n');
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "Error writing log file", e);
+      }
+      flushedSequence = last;
+      if (file.length() > maxFileBytes) {
+        rotate();
+      }
+    }
+  }
+
+  private void rotate() {
+    new File(logDir, LOG_FILE + "." + (maxFiles - 1)).delete();
+    for (int i = maxFiles - 2; i >= 1; i--) {
+      File older = new File(logDir, LOG_FILE + "." + i);
+      if (older.exists()) {
+        older.renameTo(new File(logDir, LOG_FILE + "." + (i + 1)));
+      }
+    }
+    new File(logDir, LOG_FILE).renameTo(new File(logDir, LOG_FILE + ".1"));
+  }
+
+  /** Returns how many entries were overwritten before they could be written to the file. */
+  public long getDroppedCount() {
+    synchronized (flushLock) {
+      return droppedCount;
+    }
+  }
+
+  public File getLogFile() {
+    return logDir != null ? new File(logDir, LOG_FILE) : null;
+  }
+
+  private static char levelLetter(int level) {
+    switch (level) {
+      case VERBOSE:
+        return 'V';
+      case DEBUG:
+        return 'D';
+      case INFO:
+        return 'I';
+      case WARN:
+        return 'W';
+      default:
+        return 'E';
+    }
+  }
+}
@@ -74,6 +74,26 @@ public class PromptFormat {
     }
   }
 
+  /**
+   * All strings that end a response: the stop token plus markers that only appear when the
+   * model runs past the end of its turn.
+   */
+  public static String[] getStopSequences(ModelType modelType) {
+    switch (modelType) {
+      case LLAMA_3:
+      case LLAMA_3_1:
+      case LLAMA_3_2:
+      case LLAMA_GUARD_3:
+        return new String[] {
+          "<|eot_id|>", "<|end_of_text|>", "<|eom_id|>", "<|start_header_id|>", "<|end_header_id|>"
+        };
+      case LLAVA_1_5:
+        return new String[] {"</s>", "USER:"};
+      default:
+        return new String[0];
+    }
+  }
+
   public static String getLlavaPresetPrompt() {
     return "A chat between a curious human and an artificial intelligence assistant. The assistant"
         + " gives helpful, detailed, and polite answers to the human's questions. USER: ";
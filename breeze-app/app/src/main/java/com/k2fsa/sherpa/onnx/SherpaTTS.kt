@@ -188,6 +188,27 @@ class SherpaTTS private constructor(
         }
     }
 
+    /**
+     * Synthesizes [text] sentence by sentence, passing each sentence's samples to [onChunk]
+     * as soon as it is generated. Return false from [onChunk] to stop early.
+     */
+    fun synthesizeStreaming(
+        text: String,
+        speakerId: Int = 0,
+        speed: Float = 1.0f,
+        onChunk: (FloatArray) -> Boolean
+    ) {
+        checkInitialized()
+        try {
+            tts.generateWithCallback(text, speakerId, speed) { samples ->
+                if (onChunk(samples)) 1 else 0
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Synthesis failed", e)
+            throw e
+        }
+    }
+
     fun stop() {
         isStopped.set(true)
         currentCallback = null
@@ -4,13 +4,20 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.content.pm.ApplicationInfo;
 import android.os.IBinder;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.graphics.Typeface;
+import android.view.Gravity;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
 import android.widget.PopupMenu;
+import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ImageButton;
 import android.widget.CheckBox;
@@ -32,6 +39,7 @@ import com.mtkresearch.breeze_app.utils.ChatMessage;
 import java.io.File;
 
 import com.mtkresearch.breeze_app.service.ASREngineService;
+import com.mtkresearch.breeze_app.service.GenerationMetrics;
 import com.mtkresearch.breeze_app.service.LLMEngineService;
 import com.mtkresearch.breeze_app.service.TTSEngineService;
 import com.mtkresearch.breeze_app.service.VLMEngineService;
@@ -52,6 +60,10 @@ import com.mtkresearch.breeze_app.utils.ChatUIStateHandler;
 import com.mtkresearch.breeze_app.utils.ConversationManager;
 import com.mtkresearch.breeze_app.utils.ChatHistoryManager;
 import com.mtkresearch.breeze_app.utils.ChatHistoryAdapter;
+import com.mtkresearch.breeze_app.utils.StreamingMessageUpdater;
+import com.mtkresearch.breeze_app.utils.TokenCounter;
+import com.mtkresearch.breeze_app.utils.EngineStartupOrchestrator;
+import com.mtkresearch.breeze_app.utils.Tracer;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -134,24 +146,69 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     // Add new fields for initialization state
     private boolean isInitializing = false;
     private final Object initLock = new Object();
+
+    // Engine startup. Each future completes when its engine has initialized.
+    private static final String ENGINE_LLM = "LLM";
+    private static final String ENGINE_VLM = "VLM";
+    private static final String ENGINE_ASR = "ASR";
+    private static final String ENGINE_TTS = "TTS";
+    private EngineStartupOrchestrator startupOrchestrator;
+    private volatile List<EngineStartupOrchestrator.TimelineEntry> startupTimeline;
+    private volatile CompletableFuture<Boolean> llmStartup;
+    private volatile CompletableFuture<Boolean> vlmStartup;
+    private volatile CompletableFuture<Boolean> asrStartup;
+    private volatile CompletableFuture<Boolean> ttsStartup;
     private static final int INIT_DELAY_MS = AppConstants.INIT_DELAY_MS;
 
     private boolean hasReceivedResponse = false;  // Add class field
 
+    // Response being spoken while it is generated, when speaking responses is enabled
+    private TTSEngineService.SpeechStream responseSpeech;
+
+    // Batch evaluation requested through the launch intent, started once the LLM is ready
+    private Intent pendingBatchIntent;
+
+    // Performance overlay, toggled from the debug menu
+    private static final long PERF_OVERLAY_REFRESH_MS = 1000;
+    private TextView perfOverlay;
+    private final Handler perfOverlayHandler = new Handler(Looper.getMainLooper());
+    private final Runnable perfOverlayRefresh = new Runnable() {
+        @Override
+        public void run() {
+            updatePerfOverlay();
+            perfOverlayHandler.postDelayed(this, PERF_OVERLAY_REFRESH_MS);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         initializeViews();
         initializeHandlers();
         
-        // Show intro dialog first, services will initialize after dialog is dismissed
-        showIntroDialog();
+        if (isBatchIntent(getIntent())) {
+            // Unattended evaluation run: nobody is there to dismiss the intro dialog
+            handleBatchIntent(getIntent());
+            startInitialization();
+        } else {
+            // Show intro dialog first, services will initialize after dialog is dismissed
+            showIntroDialog();
+        }
         
         setupHistoryDrawer();
         historyManager.clearCurrentActiveHistory();
         clearCurrentConversation();
     }
 
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        if (isBatchIntent(intent)) {
+            handleBatchIntent(intent);
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -219,6 +276,10 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         chatAdapter.setSpeakerClickListener(this);
         // Add copy message listener
         chatAdapter.setOnMessageLongClickListener((message, position) -> {
+            // Message options are often followed by listening to the message
+            if (ttsService != null) {
+                ttsService.prewarm();
+            }
             showMessageOptions(message);
             return true;
         });
@@ -264,9 +325,27 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     }
 
     private void setupAttachmentButton() {
-        View.OnClickListener attachClickListener = v -> showAttachmentOptions();
+        View.OnClickListener attachClickListener = v -> {
+            prewarmVLM();
+            showAttachmentOptions();
+        };
         binding.attachButton.setOnClickListener(attachClickListener);
         binding.attachButtonExpanded.setOnClickListener(attachClickListener);
+
+        // Focus on the attach button predicts an image, so the VLM starts loading early
+        View.OnFocusChangeListener attachFocusListener = (v, hasFocus) -> {
+            if (hasFocus) {
+                prewarmVLM();
+            }
+        };
+        binding.attachButton.setOnFocusChangeListener(attachFocusListener);
+        binding.attachButtonExpanded.setOnFocusChangeListener(attachFocusListener);
+    }
+
+    private void prewarmVLM() {
+        if (vlmService != null) {
+            vlmService.prewarm();
+        }
     }
 
     private void setupVoiceButton() {
@@ -397,83 +476,185 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         initializeServices();
     }
 
+    /**
+     * Starts the enabled engines through the startup orchestrator. The chat becomes usable
+     * as soon as the LLM is ready; the other engines keep loading in the background.
+     */
     private void initializeServices() {
-        // Create a single background thread instead of thread pool to reduce memory usage
-        Thread initThread = new Thread(() -> {
-            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
-            
-            try {
-                Log.d(TAG, "Starting service initialization...");
-                Log.d(TAG, "TTS_ENABLED: " + AppConstants.TTS_ENABLED);
-                Log.d(TAG, "ASR_ENABLED: " + AppConstants.ASR_ENABLED);
-                Log.d(TAG, "LLM_ENABLED: " + AppConstants.LLM_ENABLED);
-                Log.d(TAG, "VLM_ENABLED: " + AppConstants.VLM_ENABLED);
-                
-                // Initialize LLM service if enabled
-                if (AppConstants.LLM_ENABLED) {
-                    initializeLLMService();
-                }
-                
-                // Initialize VLM service if enabled
-                if (AppConstants.VLM_ENABLED) {
-                    initializeVLMService();
-                }
-                
-                // Initialize TTS service if enabled (moved before ASR check since it doesn't require permissions)
-                if (AppConstants.TTS_ENABLED) {
-                    Log.d(TAG, "Initializing TTS service...");
-                    try {
-                        initializeTTSService();
-                        Log.d(TAG, "TTS service initialization completed");
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error initializing TTS service", e);
-                    }
+        Log.d(TAG, "Starting service initialization...");
+        Log.d(TAG, "TTS_ENABLED: " + AppConstants.TTS_ENABLED);
+        Log.d(TAG, "ASR_ENABLED: " + AppConstants.ASR_ENABLED);
+        Log.d(TAG, "LLM_ENABLED: " + AppConstants.LLM_ENABLED);
+        Log.d(TAG, "VLM_ENABLED: " + AppConstants.VLM_ENABLED);
+
+        startupOrchestrator = new EngineStartupOrchestrator(
+            AppConstants.STARTUP_MEMORY_BUDGET_MB,
+            AppConstants.STARTUP_MAX_CONCURRENT_LOADS,
+            AppConstants.STARTUP_ENGINE_TIMEOUT_MS);
+
+        if (AppConstants.LLM_ENABLED) {
+            long llmMemoryMb = new File(AppConstants.getModelPath(this)).length() / (1024 * 1024);
+            startupOrchestrator.register(ENGINE_LLM, llmMemoryMb, () -> {
+                llmStartup = new CompletableFuture<>();
+                initializeLLMService();
+                return llmStartup;
+            });
+        }
+
+        // The VLM is as large as the LLM, so it loads after it rather than competing for memory
+        if (AppConstants.VLM_ENABLED) {
+            startupOrchestrator.register(ENGINE_VLM, AppConstants.STARTUP_VLM_MEMORY_MB, () -> {
+                vlmStartup = new CompletableFuture<>();
+                initializeVLMService();
+                return vlmStartup;
+            }, ENGINE_LLM);
+        }
+
+        // TTS and ASR do not depend on the LLM and load alongside it
+        if (AppConstants.TTS_ENABLED) {
+            startupOrchestrator.register(ENGINE_TTS, AppConstants.STARTUP_TTS_MEMORY_MB, () -> {
+                ttsStartup = new CompletableFuture<>();
+                initializeTTSService();
+                return ttsStartup;
+            });
+        }
+
+        if (AppConstants.ASR_ENABLED) {
+            if (checkSelfPermission(android.Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
+                startupOrchestrator.register(ENGINE_ASR, AppConstants.STARTUP_ASR_MEMORY_MB, () -> {
+                    asrStartup = new CompletableFuture<>();
+                    initializeASRService();
+                    return asrStartup;
+                });
+            } else {
+                Log.w(TAG, "Audio permission not granted, skipping ASR initialization");
+            }
+        }
+
+        startupOrchestrator.setListener(new EngineStartupOrchestrator.Listener() {
+            @Override
+            public void onEngineReady(String name, boolean success) {
+                // The chat is usable once the LLM is ready, or failed to load
+                if (name.equals(ENGINE_LLM)) {
+                    finishInitialization();
                 }
-                
-                // Initialize ASR if enabled and audio permission is granted
-                if (checkSelfPermission(android.Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
-                    if (AppConstants.ASR_ENABLED) {
-                        initializeASRService();
-                    }
-                } else {
-                    Log.w(TAG, "Audio permission not granted, skipping ASR initialization");
+            }
+
+            @Override
+            public void onStartupComplete(List<EngineStartupOrchestrator.TimelineEntry> timeline) {
+                finishInitialization();
+                startupTimeline = timeline;
+
+                Log.d(TAG, "Service initialization complete. States:");
+                Log.d(TAG, "LLM ready: " + llmServiceReady);
+                Log.d(TAG, "VLM ready: " + vlmServiceReady);
+                Log.d(TAG, "ASR ready: " + asrServiceReady);
+                Log.d(TAG, "TTS ready: " + ttsServiceReady);
+            }
+        });
+        startupOrchestrator.start();
+    }
+
+    private void finishInitialization() {
+        new Handler(Looper.getMainLooper()).post(() -> {
+            if (!isFinishing()) {
+                synchronized (initLock) {
+                    isInitializing = false;
                 }
-                
-                // Update UI on main thread
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    if (!isFinishing()) {
-                        // Mark initialization as complete
-                        synchronized (initLock) {
-                            isInitializing = false;
-                        }
-                        updateInteractionState();
-                        
-                        // Log final service states
-                        Log.d(TAG, "Service initialization complete. States:");
-                        Log.d(TAG, "LLM ready: " + llmServiceReady);
-                        Log.d(TAG, "VLM ready: " + vlmServiceReady);
-                        Log.d(TAG, "ASR ready: " + asrServiceReady);
-                        Log.d(TAG, "TTS ready: " + ttsServiceReady);
-                    }
-                });
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error during service initialization", e);
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    if (!isFinishing()) {
-                        Toast.makeText(ChatActivity.this,
-                                ChatActivity.this.getString(R.string.error_initializing_services) + e.getMessage(),
-                            Toast.LENGTH_SHORT).show();
-                        // Mark initialization as complete even on error
-                        synchronized (initLock) {
-                            isInitializing = false;
-                        }
-                        updateInteractionState();
-                    }
-                });
+                updateInteractionState();
+                startPendingBatch();
             }
         });
-        initThread.start();
+    }
+
+    /**
+     * Batch intents are only honored in debuggable builds, since this activity is exported.
+     */
+    private boolean isBatchIntent(Intent intent) {
+        return intent != null
+            && (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0
+            && (intent.hasExtra(AppConstants.EXTRA_BATCH_INPUT) || intent.hasExtra(AppConstants.EXTRA_BATCH_CANCEL));
+    }
+
+    /**
+     * Handles a batch evaluation intent, e.g. from adb:
+     * {@code am start -n com.mtkresearch.breeze_app/.ChatActivity --es batch_input prompts.jsonl}.
+     * Paths are relative to the app's external files "eval" directory and may not leave it.
+     * The output defaults to {@code <input name>.results.jsonl} next to the input, so rerunning
+     * the same command resumes an interrupted run. {@code --ez batch_cancel true} stops a
+     * running batch.
+     */
+    private void handleBatchIntent(Intent intent) {
+        if (intent.getBooleanExtra(AppConstants.EXTRA_BATCH_CANCEL, false)) {
+            pendingBatchIntent = null;
+            if (llmService != null) {
+                llmService.cancelBatch();
+            }
+            return;
+        }
+        pendingBatchIntent = intent;
+        startPendingBatch();
+    }
+
+    private void startPendingBatch() {
+        Intent intent = pendingBatchIntent;
+        if (intent == null || llmService == null || !llmService.isReady()) {
+            return;
+        }
+        pendingBatchIntent = null;
+
+        File directory = new File(getExternalFilesDir(null), AppConstants.BATCH_DIR);
+        File input = resolveBatchFile(directory, intent.getStringExtra(AppConstants.EXTRA_BATCH_INPUT));
+        String outputPath = intent.getStringExtra(AppConstants.EXTRA_BATCH_OUTPUT);
+        File output = input == null ? null : outputPath != null
+            ? resolveBatchFile(directory, outputPath)
+            : new File(input.getParentFile(), input.getName().replaceFirst("\\.jsonl$", "") + ".results.jsonl");
+        if (input == null || output == null) {
+            Log.e(TAG, "Rejected batch paths outside " + directory);
+            Toast.makeText(this, "Batch files must be inside " + directory, Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        Log.i(TAG, "Starting batch evaluation: " + input + " -> " + output);
+        // The LLM is released when the activity pauses, so keep the screen on while it runs
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        Toast.makeText(this, "Running batch " + input.getName(), Toast.LENGTH_SHORT).show();
+        llmService.startBatch(input, output).whenComplete((summary, throwable) -> runOnUiThread(() -> {
+            getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+            if (throwable != null) {
+                Log.e(TAG, "Batch evaluation failed", throwable);
+                Toast.makeText(this, "Batch failed: " + throwable.getMessage(), Toast.LENGTH_LONG).show();
+            } else {
+                Log.i(TAG, "Batch evaluation finished: " + summary + ", results in " + output);
+                Toast.makeText(this, "Batch finished: " + summary, Toast.LENGTH_LONG).show();
+            }
+        }));
+    }
+
+    /**
+     * Resolves a relative path inside the batch directory, or returns null if it is absolute
+     * or escapes the directory.
+     */
+    private static File resolveBatchFile(File directory, String path) {
+        if (path == null || new File(path).isAbsolute()) {
+            return null;
+        }
+        try {
+            File root = directory.getCanonicalFile();
+            File file = new File(root, path).getCanonicalFile();
+            return file.getPath().startsWith(root.getPath() + File.separator) ? file : null;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot resolve batch path " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns when each engine started and became ready during the last startup, or null
+     * while engines are still loading.
+     */
+    public List<EngineStartupOrchestrator.TimelineEntry> getStartupTimeline() {
+        return startupTimeline;
     }
 
     private void initializeLLMService() throws Exception {
@@ -517,9 +698,6 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         if (!success.get()) {
             throw new Exception("LLM service binding failed");
         }
-        
-        // Add delay to allow service to start
-        Thread.sleep(1000);
     }
 
     private void initializeVLMService() throws Exception {
@@ -595,9 +773,6 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         if (!success.get()) {
             throw new Exception("TTS service binding failed");
         }
-        
-        // Add delay to allow service to start
-        Thread.sleep(500);
     }
 
     private void handleSendAction() {
@@ -648,19 +823,27 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         
         // Generate AI response with formatted prompt
         if (llmService != null) {
-            String formattedPrompt = getFormattedPrompt(message);
+            long turnStart = Tracer.now();
+            long formatTrace = Tracer.begin("chat.formatPrompt");
+            String formattedPrompt;
+            try {
+                formattedPrompt = getFormattedPrompt(message);
+            } finally {
+                Tracer.end(formatTrace);
+            }
             
             // Set UI to generation state BEFORE starting generation
             setSendButtonsAsStop(true);
             
             hasReceivedResponse = false;  // Reset at start of generation
+            // Tokens are batched per display frame and appended to the message view
+            StreamingMessageUpdater streamingUpdater =
+                new StreamingMessageUpdater(chatAdapter, binding.recyclerView, aiMessage);
+            TTSEngineService.SpeechStream speech = startResponseSpeech();
             llmService.generateStreamingResponse(formattedPrompt, new LLMEngineService.StreamingResponseCallback() {
-                private final StringBuilder currentResponse = new StringBuilder();
-                private boolean isGenerating = true;  // Track generation state
-
                 @Override
                 public void onToken(String token) {
-                    if (!isGenerating || token == null || token.isEmpty()) {
+                    if (token == null || token.isEmpty()) {
                         return;
                     }
 
@@ -669,15 +852,18 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                         conversationManager.addMessage(aiMessage);
                     }
 
-                    runOnUiThread(() -> {
-                        currentResponse.append(token);
-                        aiMessage.updateText(currentResponse.toString());
-                        chatAdapter.notifyItemChanged(chatAdapter.getItemCount() - 1);
-                        UiUtils.scrollToLatestMessage(binding.recyclerView, chatAdapter.getItemCount(), false);
-                    });
+                    streamingUpdater.onToken(token);
+                    if (speech != null) {
+                        speech.append(token);
+                    }
                 }
             }).thenAccept(finalResponse -> {
+                if (speech != null) {
+                    speech.finish();
+                }
                 runOnUiThread(() -> {
+                    streamingUpdater.finish();
+                    Tracer.span("chat.turn", turnStart, Tracer.now());
                     if (finalResponse != null && !finalResponse.equals(AppConstants.LLM_DEFAULT_ERROR_RESPONSE)) {
                         String response = finalResponse.trim();
                         if (response.isEmpty()) {
@@ -708,7 +894,11 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                 });
             }).exceptionally(throwable -> {
                 Log.e(TAG, "Error generating response", throwable);
+                if (speech != null) {
+                    speech.cancel();
+                }
                 runOnUiThread(() -> {
+                    streamingUpdater.finish();
                     if (!aiMessage.hasContent()) {
                         aiMessage.updateText("Error: Unable to generate response. Please try again later.");
                     }
@@ -722,6 +912,28 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         }
     }
 
+    private boolean isSpeakResponsesEnabled() {
+        return getSharedPreferences(AppConstants.PREFS_NAME, MODE_PRIVATE)
+            .getBoolean(AppConstants.KEY_SPEAK_RESPONSES, false);
+    }
+
+    /**
+     * Starts speaking the next response while it is generated, if enabled and TTS is loaded.
+     */
+    private TTSEngineService.SpeechStream startResponseSpeech() {
+        responseSpeech = null;
+        if (!isSpeakResponsesEnabled() || ttsService == null) {
+            return null;
+        }
+        if (!ttsService.isReady()) {
+            // Too late for this response, but the next one will be spoken
+            ttsService.prewarm();
+            return null;
+        }
+        responseSpeech = ttsService.startSpeechStream();
+        return responseSpeech;
+    }
+
     private void setSendButtonsAsStop(boolean isStop) {
         runOnUiThread(() -> {
             try {
@@ -763,6 +975,9 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                             
                             // Stop generation and wait for completion
                             llmService.stopGeneration();
+                            if (responseSpeech != null) {
+                                responseSpeech.cancel();
+                            }
                             
                             // Wait for a short delay to ensure generation has stopped
                             new Handler().postDelayed(() -> {
@@ -1032,7 +1247,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             return;
         }
 
-        if (!ttsService.isReady()) {
+        if (!ttsService.isAvailable()) {
             Toast.makeText(this, this.getString(R.string.text_to_speech_is_still_initializing), Toast.LENGTH_SHORT).show();
             return;
         }
@@ -1065,6 +1280,10 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     }
 
     private void cleanup() {
+        if (startupOrchestrator != null) {
+            startupOrchestrator.cancel();
+        }
+        perfOverlayHandler.removeCallbacks(perfOverlayRefresh);
         // Run cleanup in background to prevent ANR
         CompletableFuture.runAsync(() -> {
             try {
@@ -1114,7 +1333,8 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     }
 
     private void releaseLLMResources() {
-        if (llmService != null) {
+        // A running batch evaluation keeps the model loaded
+        if (llmService != null && !llmService.isBatchRunning()) {
             llmService.releaseResources();
         }
     }
@@ -1131,6 +1351,12 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         }
     }
 
+    private static void completeStartup(CompletableFuture<Boolean> startup, boolean success) {
+        if (startup != null) {
+            startup.complete(success);
+        }
+    }
+
     // Service Connections
     private final ServiceConnection llmConnection = new ServiceConnection() {
         @Override
@@ -1141,6 +1367,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                 
                 llmService.initialize().thenAccept(success -> {
                     llmServiceReady = success;
+                    completeStartup(llmStartup, success);
                     if (success) {
                         runOnUiThread(() -> {
                             String modelName = llmService.getModelName();
@@ -1165,6 +1392,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                 }).exceptionally(throwable -> {
                     Log.e(TAG, "Error initializing model", throwable);
                     llmServiceReady = false;
+                    completeStartup(llmStartup, false);
                     runOnUiThread(() -> {
                         binding.modelNameText.setText(ChatActivity.this.getString(R.string.model_error));
                         binding.modelNameText.setTextColor(getResources().getColor(R.color.error, getTheme()));
@@ -1180,6 +1408,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         public void onServiceDisconnected(ComponentName name) {
             llmService = null;
             llmServiceReady = false;
+            completeStartup(llmStartup, false);
             runOnUiThread(() -> {
                 binding.modelNameText.setText(ChatActivity.this.getString(R.string.model_disconnected));
                 binding.modelNameText.setTextColor(getResources().getColor(R.color.error, getTheme()));
@@ -1193,7 +1422,11 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
             vlmService = ((VLMEngineService.LocalBinder) service).getService();
+            if (vlmService != null && AppConstants.LAZY_ENGINE_LOADING) {
+                vlmService.deferInitialization();
+            }
             vlmServiceReady = vlmService != null;
+            completeStartup(vlmStartup, vlmServiceReady);
             updateInteractionState();
         }
 
@@ -1201,6 +1434,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         public void onServiceDisconnected(ComponentName name) {
             vlmService = null;
             vlmServiceReady = false;
+            completeStartup(vlmStartup, false);
             updateInteractionState();
         }
     };
@@ -1210,9 +1444,16 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         public void onServiceConnected(ComponentName name, IBinder service) {
             Log.d(TAG, "ASR service connected");
             asrService = ((ASREngineService.LocalBinder) service).getService();
-            if (asrService != null) {
+            if (asrService != null && AppConstants.LAZY_ENGINE_LOADING) {
+                // The recognizer loads when recording starts
+                asrService.deferInitialization();
+                asrServiceReady = true;
+                completeStartup(asrStartup, true);
+                updateInteractionState();
+            } else if (asrService != null) {
                 asrService.initialize().thenAccept(success -> {
                     asrServiceReady = success;
+                    completeStartup(asrStartup, success);
                     Log.d(TAG, "ASR initialization " + (success ? "successful" : "failed"));
                     if (!success) {
                         runOnUiThread(() -> Toast.makeText(ChatActivity.this,
@@ -1222,6 +1463,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                 }).exceptionally(throwable -> {
                     Log.e(TAG, "Error initializing ASR", throwable);
                     asrServiceReady = false;
+                    completeStartup(asrStartup, false);
                     runOnUiThread(() -> Toast.makeText(ChatActivity.this,
                             ChatActivity.this.getString(R.string.ars_initialization_failed) + throwable.getMessage(),
                         Toast.LENGTH_SHORT).show());
@@ -1236,6 +1478,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             Log.d(TAG, "ASR service disconnected");
             asrService = null;
             asrServiceReady = false;
+            completeStartup(asrStartup, false);
             updateInteractionState();
         }
     };
@@ -1245,7 +1488,16 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
         public void onServiceConnected(ComponentName name, IBinder service) {
             Log.d(TAG, "TTS service connected");
             ttsService = ((TTSEngineService.LocalBinder) service).getService();
-            if (ttsService != null) {
+            if (ttsService != null && AppConstants.LAZY_ENGINE_LOADING) {
+                // The voice model loads on the first speaker tap
+                ttsService.deferInitialization();
+                if (isSpeakResponsesEnabled()) {
+                    ttsService.prewarm();
+                }
+                ttsServiceReady = true;
+                completeStartup(ttsStartup, true);
+                updateInteractionState();
+            } else if (ttsService != null) {
                 runOnUiThread(() -> Toast.makeText(ChatActivity.this,
                         ChatActivity.this.getString(R.string.initializing_text_to_speech), Toast.LENGTH_SHORT).show());
                 
@@ -1254,6 +1506,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                         ttsService.initialize()
                             .thenAccept(success -> {
                                 ttsServiceReady = success;
+                                completeStartup(ttsStartup, success);
                                 Log.d(TAG, "TTS initialization " + (success ? "successful" : "failed"));
                                 if (success) {
                                     runOnUiThread(() -> Toast.makeText(ChatActivity.this,
@@ -1267,6 +1520,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                             .exceptionally(throwable -> {
                                 Log.e(TAG, "Error initializing TTS", throwable);
                                 ttsServiceReady = false;
+                                completeStartup(ttsStartup, false);
                                 runOnUiThread(() -> {
                                     Toast.makeText(ChatActivity.this,
                                             ChatActivity.this.getString(R.string.error_initialize_text_to_speech) + throwable.getMessage(),
@@ -1278,6 +1532,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                     } catch (Exception e) {
                         Log.e(TAG, "Error starting TTS initialization", e);
                         ttsServiceReady = false;
+                        completeStartup(ttsStartup, false);
                         updateInteractionState();
                     }
                 });
@@ -1289,6 +1544,7 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             Log.d(TAG, "TTS service disconnected");
             ttsService = null;
             ttsServiceReady = false;
+            completeStartup(ttsStartup, false);
             updateInteractionState();
         }
     };
@@ -1473,7 +1729,15 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
     }
 
     private void saveCurrentChat() {
-        List<ChatMessage> messages = conversationManager.getMessages();
+        long trace = Tracer.begin("chat.save");
+        try {
+            saveMessages(conversationManager.getMessages());
+        } finally {
+            Tracer.end(trace);
+        }
+    }
+
+    private void saveMessages(List<ChatMessage> messages) {
         if (!messages.isEmpty()) {
             // Use first message as title, or a default title if it's empty
             String title = messages.get(0).getText();
@@ -1502,33 +1766,14 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
             return PromptManager.formatCompletePrompt(userMessage, new ArrayList<>(), ModelType.LLAMA_3_2);
         }
         
-        // Otherwise use history as before
-        List<ChatMessage> allMessages = conversationManager.getMessages();
-        List<ChatMessage> historyMessages = new ArrayList<>();
-        
-        if (!allMessages.isEmpty()) {
-            // Get messages up to but not including the last one (which would be the current query)
-            int endIndex = allMessages.size() - 1;
-            int startIndex = Math.max(0, endIndex - AppConstants.CONVERSATION_HISTORY_LOOKBACK);
-            
-            for (int i = startIndex; i < endIndex; i++) {
-                historyMessages.add(allMessages.get(i));
-            }
-        }
-        
-        // Format with history
-        String fullPrompt = PromptManager.formatCompletePrompt(userMessage, historyMessages, ModelType.LLAMA_3_2);
-        
-        // Check if prompt might exceed max length (using conservative estimate)
-        if (fullPrompt.length() > AppConstants.getLLMMaxInputLength(this) * 3) { // Assuming average of 3 chars per token
-            Log.w(TAG, "Prompt too long with history, removing history to fit token limit");
-            // Format prompt with empty history list to get just system prompt + user message
-            String reducedPrompt = PromptManager.formatCompletePrompt(userMessage, new ArrayList<>(), ModelType.LLAMA_3_2);
-            Log.d(TAG, "Reduced prompt without history: " + reducedPrompt);
-            return reducedPrompt;
-        }
-        
-        return fullPrompt;
+        // Otherwise fill the remaining token budget with the newest whole turns. The current
+        // query has no answer yet, so it is never part of the history.
+        TokenCounter tokenCounter = PromptManager.getTokenCounter(this);
+        int budget = PromptManager.getMaxPromptTokens(this)
+            - tokenCounter.countTokens(PromptManager.getSystemPrompt(ModelType.LLAMA_3_2))
+            - tokenCounter.countTokens(PromptManager.formatUserPrompt(userMessage, ModelType.LLAMA_3_2));
+        String history = conversationManager.getContextWindow().buildHistory(tokenCounter, Math.max(budget, 0));
+        return PromptManager.formatPromptWithHistory(userMessage, history, ModelType.LLAMA_3_2);
     }
 
     private void setupTitleTapCounter() {
@@ -1552,6 +1797,114 @@ public class ChatActivity extends AppCompatActivity implements ChatMessageAdapte
                 Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
             }
         });
+        binding.modelNameText.setOnLongClickListener(v -> {
+            showDebugMenu();
+            return true;
+        });
+    }
+
+    private void showDebugMenu() {
+        PopupMenu popup = new PopupMenu(this, binding.modelNameText);
+        popup.getMenu().add(0, 1, 0, "Export trace");
+        popup.getMenu().add(0, 2, 0, perfOverlay != null ? "Hide performance overlay" : "Show performance overlay");
+        popup.getMenu().add(0, 3, 0, "Speak responses while generating").setCheckable(true)
+            .setChecked(isSpeakResponsesEnabled());
+
+        popup.setOnMenuItemClickListener(item -> {
+            switch (item.getItemId()) {
+                case 1:
+                    exportTrace();
+                    return true;
+                case 2:
+                    togglePerfOverlay();
+                    return true;
+                case 3:
+                    boolean enabled = !isSpeakResponsesEnabled();
+                    getSharedPreferences(AppConstants.PREFS_NAME, MODE_PRIVATE).edit()
+                        .putBoolean(AppConstants.KEY_SPEAK_RESPONSES, enabled).apply();
+                    if (enabled && ttsService != null) {
+                        ttsService.prewarm();
+                    }
+                    return true;
+            }
+            return false;
+        });
+
+        popup.show();
+    }
+
+    private void exportTrace() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                File file = Tracer.exportToFile(this);
+                Log.d(TAG, "Trace exported to " + file.getAbsolutePath());
+                runOnUiThread(() -> Toast.makeText(this,
+                    "Trace saved to " + file.getAbsolutePath(), Toast.LENGTH_LONG).show());
+            } catch (IOException e) {
+                Log.e(TAG, "Error exporting trace", e);
+                runOnUiThread(() -> Toast.makeText(this,
+                    "Error exporting trace: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+            }
+        });
+    }
+
+    private void togglePerfOverlay() {
+        ViewGroup content = findViewById(android.R.id.content);
+        if (perfOverlay != null) {
+            perfOverlayHandler.removeCallbacks(perfOverlayRefresh);
+            content.removeView(perfOverlay);
+            perfOverlay = null;
+            return;
+        }
+
+        perfOverlay = new TextView(this);
+        perfOverlay.setTypeface(Typeface.MONOSPACE);
+        perfOverlay.setTextSize(10);
+        perfOverlay.setTextColor(Color.WHITE);
+        perfOverlay.setBackgroundColor(0xB0000000);
+        int padding = (int) (8 * getResources().getDisplayMetrics().density);
+        perfOverlay.setPadding(padding, padding, padding, padding);
+        // Touches pass through to the chat underneath
+        perfOverlay.setClickable(false);
+        perfOverlay.setFocusable(false);
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.END);
+        params.topMargin = binding.modelNameText.getBottom() + padding;
+        content.addView(perfOverlay, params);
+        perfOverlayRefresh.run();
+    }
+
+    private void updatePerfOverlay() {
+        if (perfOverlay == null) {
+            return;
+        }
+        if (llmService == null) {
+            perfOverlay.setText("LLM not connected");
+            return;
+        }
+
+        GenerationMetrics metrics = llmService.getGenerationMetrics();
+        StringBuilder text = new StringBuilder();
+        text.append(llmService.getModelName()).append(" on ").append(llmService.getCurrentBackend());
+        GenerationMetrics.Sample last = metrics.getLastSample();
+        if (last != null) {
+            text.append("\nlast: ").append(last);
+        }
+        for (GenerationMetrics.BackendStats stats : metrics.getStats()) {
+            text.append('\n').append(stats);
+        }
+        if (ttsService != null && ttsService.getTimeToFirstAudioMs().getCount() > 0) {
+            text.append("\nTTS first audio ms ").append(ttsService.getTimeToFirstAudioMs());
+        }
+        if (ttsService != null && ttsService.getAudioCacheHitCount() > 0) {
+            text.append(String.format(Locale.US, "\nTTS cache %.0f%% hits, %d KB saved",
+                ttsService.getAudioCacheHitRate() * 100, ttsService.getAudioCacheBytesSaved() / 1024));
+        }
+        text.append(String.format(Locale.US, "\nqueue %d, wait avg %d ms, cache %d/%d hits",
+            llmService.getGenerationQueueDepth(), llmService.getAverageGenerationWaitTimeMs(),
+            llmService.getResponseCacheHitCount(),
+            llmService.getResponseCacheHitCount() + llmService.getResponseCacheMissCount()));
+        perfOverlay.setText(text);
     }
 
     private void showMessageOptions(ChatMessage message) {
@@ -243,9 +243,8 @@ public class MainActivity extends AppCompatActivity {
                 @Override
                 public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                     selectedLlmModel = llmModels[position];
-                    // If service is already running, restart it with new model
                     if (llmEnabled && llmService != null) {
-                        restartService(LLMEngineService.class, llmConnection, binding.llmStatusIndicator);
+                        switchLlmModel(LLAMA_MODEL_PATH + selectedLlmModel);
                     }
                 }
 
@@ -525,6 +524,23 @@ public class MainActivity extends AppCompatActivity {
         ERROR
     }
 
+    /**
+     * Switches the running LLM service to another model in place, which is instant when the
+     * model is still resident. Falls back to restarting the service.
+     */
+    private void switchLlmModel(String modelPath) {
+        LLMEngineService service = llmService;
+        updateEngineStatus(binding.llmStatusIndicator, EngineStatus.INITIALIZING);
+        service.switchModel(modelPath).thenAccept(success -> runOnUiThread(() -> {
+            if (success) {
+                updateEngineStatus(binding.llmStatusIndicator, EngineStatus.READY);
+            } else if (llmService != null) {
+                // If service is already running, restart it with new model
+                restartService(LLMEngineService.class, llmConnection, binding.llmStatusIndicator);
+            }
+        }));
+    }
+
     private void restartService(Class<? extends BaseEngineService> serviceClass, 
                               ServiceConnection connection,
                               ImageView statusIndicator) {
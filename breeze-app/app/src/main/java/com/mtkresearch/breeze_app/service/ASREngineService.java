@@ -15,8 +15,11 @@ import android.util.Log;
 import androidx.core.content.ContextCompat;
 
 import com.k2fsa.sherpa.onnx.SherpaASR;
+import com.mtkresearch.breeze_app.utils.SelfTestCache;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -25,6 +28,7 @@ public class ASREngineService extends BaseEngineService {
     private static final String TAG = "ASREngineService";
     private static final String TEST_PHRASE = "with";
     private static final String TEST_AUDIO_PATH = "test_wavs/test_wavs_8k.wav";
+    private static final String SELF_TEST_ENGINE = "asr";
     private static final int RECOGNITION_TIMEOUT = 10000; // 10 seconds
     
     private SpeechRecognizer speechRecognizer;
@@ -67,7 +71,7 @@ public class ASREngineService extends BaseEngineService {
                 if (success) {
                     Log.d(TAG, "✅ " + backendName + " ASR initialized");
                     backend = backendName.toLowerCase();
-                    return testASREngine();
+                    return runSelfTest();
                 }
                 Log.d(TAG, "❌ " + backendName + " ASR failed");
                 return CompletableFuture.completedFuture(false);
@@ -104,6 +108,24 @@ public class ASREngineService extends BaseEngineService {
         return CompletableFuture.completedFuture(isAvailable);
     }
 
+    /**
+     * Runs the self-test unless it already passed for this backend and app version. The
+     * recognizer models are bundled assets, so the app version identifies them.
+     */
+    private CompletableFuture<Boolean> runSelfTest() {
+        String key = SelfTestCache.buildKey(this, null, backend);
+        if (SelfTestCache.hasPassed(this, SELF_TEST_ENGINE, key)) {
+            Log.d(TAG, "Skipping ASR test, it passed before for this backend and app version");
+            return CompletableFuture.completedFuture(true);
+        }
+        return testASREngine().thenApply(passed -> {
+            if (passed) {
+                SelfTestCache.recordPassed(this, SELF_TEST_ENGINE, key);
+            }
+            return passed;
+        });
+    }
+
     private CompletableFuture<Boolean> testASREngine() {
         Log.d(TAG, "Testing " + backend + " ASR engine...");
         return (backend.equals("local") ? testLocalASR() : testDefaultASR())
@@ -173,6 +195,16 @@ public class ASREngineService extends BaseEngineService {
     }
 
     public void startListening(Consumer<String> callback) {
+        if (isLoadPending()) {
+            ensureLoaded().thenAccept(success -> mainHandler.post(() -> {
+                if (success) {
+                    startListening(callback);
+                } else {
+                    notifyError(callback, "Failed to load ASR");
+                }
+            }));
+            return;
+        }
         if (!validateListeningPrerequisites(callback)) return;
         
         try {
@@ -188,6 +220,7 @@ public class ASREngineService extends BaseEngineService {
             }
         } catch (Exception e) {
             Log.e(TAG, "Error starting ASR", e);
+            SelfTestCache.invalidate(this, SELF_TEST_ENGINE);
             notifyError(callback, "Failed to start ASR");
         }
     }
@@ -206,6 +239,10 @@ public class ASREngineService extends BaseEngineService {
 
             @Override
             public void onError(String error) {
+                // Microphone and permission errors say nothing about the model
+                if (error != null && error.startsWith("Failed to transcribe")) {
+                    SelfTestCache.invalidate(ASREngineService.this, SELF_TEST_ENGINE);
+                }
                 notifyError(callback, error);
                 isListening = false;
             }
@@ -267,6 +304,26 @@ public class ASREngineService extends BaseEngineService {
         }
     }
 
+    /**
+     * ASR is released at the idle tier unless it is listening.
+     */
+    @Override
+    protected List<String> releaseForMemoryPressure(int tier) {
+        if (tier < TRIM_TIER_IDLE || !isInitialized || isListening) {
+            return Collections.emptyList();
+        }
+        if (sherpaASR != null) {
+            sherpaASR.release();
+            sherpaASR = null;
+        }
+        if (speechRecognizer != null) {
+            speechRecognizer.destroy();
+            speechRecognizer = null;
+        }
+        isInitialized = false;
+        return Collections.singletonList("ASR " + backend);
+    }
+
     @Override
     public void onDestroy() {
         if (sherpaASR != null) sherpaASR.release();
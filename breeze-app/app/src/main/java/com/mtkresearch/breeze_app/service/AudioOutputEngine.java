@@ -0,0 +1,392 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.mtkresearch.breeze_app.utils.Tracer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays synthesized audio through long-lived tracks, one per sample rate, from a single
+ * dedicated audio thread.
+ *
+ * Tracks are created once and reused by every utterance, so no utterance pays for track
+ * setup. Audio moves from the synthesizing thread to the audio thread in a fixed pool of
+ * preallocated buffers, so nothing is allocated while audio plays. Tracks are paused after
+ * a while without audio and resumed by the next write.
+ *
+ * A pipeline counts as played once the track's playback head passes the last frame written
+ * for it. The audio thread sleeps until the head is due to get there, so completion is
+ * reported within a few milliseconds of the audio actually ending.
+ */
+public class AudioOutputEngine {
+    private static final String TAG = "AudioOutputEngine";
+    private static final long FREE_BUFFER_POLL_MS = 20;
+    private static final long MIN_COMPLETION_POLL_MS = 5;
+
+    /**
+     * A pooled buffer of samples, or the end marker of a pipeline.
+     */
+    static class Buffer {
+        final float[] samples;
+        int length;
+        AudioPlaybackPipeline owner;
+        final boolean end;
+
+        Buffer(int capacity, boolean end) {
+            this.samples = new float[capacity];
+            this.end = end;
+        }
+    }
+
+    /**
+     * A long-lived track and the playback progress the audio thread tracks for it.
+     */
+    static class TrackState {
+        final AudioTrack track;
+        final int sampleRate;
+        // Frames a stream track needs before it starts playing
+        final int startThreshold;
+        final float[] silence;
+        // Pipelines whose audio is all written but not yet played, in order
+        final ArrayDeque<AudioPlaybackPipeline> pending = new ArrayDeque<>();
+        // Frames written since the last flush, comparable to the playback head
+        long writtenFrames = 0;
+        long headAtPlay = 0;
+
+        TrackState(AudioTrack track, int sampleRate) {
+            this.track = track;
+            this.sampleRate = sampleRate;
+            this.startThreshold = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? track.getStartThresholdInFrames() : track.getBufferSizeInFrames();
+            this.silence = new float[startThreshold];
+        }
+
+        long getHead() {
+            // The head is an unsigned 32-bit frame count
+            return track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+        }
+
+        long getMillisUntil(long frame) {
+            return Math.max(0, frame - getHead()) * 1000 / sampleRate;
+        }
+    }
+
+    private final float gain;
+    private final long idlePauseMs;
+    private final int bufferSamples;
+    private final long completionSlackMs;
+    private final Map<Integer, TrackState> tracks = new HashMap<>();
+    // The same tracks, indexed so the audio thread can walk them without allocating
+    private final List<TrackState> trackList = new ArrayList<>();
+    private final BlockingQueue<Buffer> free;
+    private final BlockingQueue<Buffer> filled;
+    private final Thread audioThread;
+    private volatile boolean released = false;
+
+    /**
+     * @param completionSlackMs how long past its expected end a pipeline may wait for the
+     *                          playback head before it is reported played anyway
+     */
+    public AudioOutputEngine(int bufferCount, int bufferSamples, float gain, long idlePauseMs,
+                             long completionSlackMs) {
+        this.gain = gain;
+        this.idlePauseMs = idlePauseMs;
+        this.bufferSamples = bufferSamples;
+        this.completionSlackMs = completionSlackMs;
+        this.free = new ArrayBlockingQueue<>(bufferCount);
+        // Room for the end markers of a few pipelines besides the buffers
+        this.filled = new ArrayBlockingQueue<>(bufferCount * 2);
+        for (int i = 0; i < bufferCount; i++) {
+            free.add(new Buffer(bufferSamples, false));
+        }
+        this.audioThread = new Thread(this::playLoop, "tts-audio");
+        this.audioThread.setPriority(Thread.MAX_PRIORITY);
+        this.audioThread.setDaemon(true);
+        this.audioThread.start();
+    }
+
+    /**
+     * Creates the track for a sample rate ahead of the first utterance.
+     */
+    public synchronized void prewarm(int sampleRate) {
+        getTrack(sampleRate);
+    }
+
+    /**
+     * Opens a pipeline for one utterance. Audio of pipelines opened one after another plays
+     * back to back in the order it was written.
+     *
+     * @param onFirstAudio run on the audio thread right before the first samples are written,
+     *                     or null
+     */
+    public synchronized AudioPlaybackPipeline open(int sampleRate, Runnable onFirstAudio) {
+        if (released) {
+            throw new IllegalStateException("Audio output released");
+        }
+        return new AudioPlaybackPipeline(this, getTrack(sampleRate), onFirstAudio);
+    }
+
+    /**
+     * Stops the audio thread and releases every track. Pipelines still playing are
+     * reported played.
+     */
+    public synchronized void release() {
+        released = true;
+        audioThread.interrupt();
+        for (TrackState state : trackList) {
+            try {
+                state.track.pause();
+                state.track.flush();
+                state.track.release();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Error releasing AudioTrack", e);
+            }
+            completeAll(state);
+        }
+        tracks.clear();
+        trackList.clear();
+    }
+
+    boolean isReleased() {
+        return released;
+    }
+
+    float getGain() {
+        return gain;
+    }
+
+    /**
+     * Waits for a free buffer, or returns null once the pipeline is cancelled.
+     */
+    Buffer takeFreeBuffer(AudioPlaybackPipeline pipeline) throws InterruptedException {
+        while (!pipeline.isCancelled() && !released) {
+            Buffer buffer = free.poll(FREE_BUFFER_POLL_MS, TimeUnit.MILLISECONDS);
+            if (buffer != null) {
+                buffer.owner = pipeline;
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    void queue(Buffer buffer) throws InterruptedException {
+        filled.put(buffer);
+    }
+
+    private TrackState getTrack(int sampleRate) {
+        TrackState state = tracks.get(sampleRate);
+        if (state == null) {
+            long trace = Tracer.begin("tts.createAudioTrack");
+            try {
+                state = new TrackState(createAudioTrack(sampleRate, bufferSamples), sampleRate);
+            } finally {
+                Tracer.end(trace);
+            }
+            tracks.put(sampleRate, state);
+            trackList.add(state);
+        }
+        return state;
+    }
+
+    private static AudioTrack createAudioTrack(int sampleRate, int startThreshold) {
+        // Use a larger buffer size for better audio quality
+        int minBufferSize = AudioTrack.getMinBufferSize(
+            sampleRate,
+            AudioFormat.CHANNEL_OUT_MONO,
+            AudioFormat.ENCODING_PCM_FLOAT
+        );
+        int bufferSize = Math.max(minBufferSize * 4, 32768); // Use larger buffer
+
+        AudioAttributes audioAttributes = new AudioAttributes.Builder()
+            .setUsage(AudioAttributes.USAGE_MEDIA)
+            .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+            .setFlags(AudioAttributes.FLAG_AUDIBILITY_ENFORCED) // Enforce audibility
+            .build();
+
+        AudioFormat audioFormat = new AudioFormat.Builder()
+            .setSampleRate(sampleRate)
+            .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+            .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+            .build();
+
+        AudioTrack track = new AudioTrack.Builder()
+            .setAudioAttributes(audioAttributes)
+            .setAudioFormat(audioFormat)
+            .setBufferSizeInBytes(bufferSize)
+            .setTransferMode(AudioTrack.MODE_STREAM)
+            .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY) // Better performance
+            .build();
+
+        // Set maximum volume
+        track.setVolume(AudioTrack.getMaxVolume());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            // Start after one pooled buffer rather than a full track buffer
+            track.setStartThresholdInFrames(Math.min(startThreshold, track.getBufferSizeInFrames()));
+        }
+        return track;
+    }
+
+    private void playLoop() {
+        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
+        long lastAudioMs = SystemClock.elapsedRealtime();
+        while (!released) {
+            try {
+                Buffer buffer = filled.poll(getWaitMs(), TimeUnit.MILLISECONDS);
+                if (buffer != null) {
+                    if (buffer.end) {
+                        end(buffer.owner);
+                    } else {
+                        play(buffer);
+                    }
+                    lastAudioMs = SystemClock.elapsedRealtime();
+                }
+                boolean playing = completePlayed();
+                if (buffer == null && !playing && SystemClock.elapsedRealtime() - lastAudioMs >= idlePauseMs) {
+                    pauseIdleTracks();
+                }
+            } catch (InterruptedException e) {
+                // Released
+            } catch (Exception e) {
+                Log.e(TAG, "Error playing audio samples", e);
+            }
+        }
+    }
+
+    private void play(Buffer buffer) {
+        AudioPlaybackPipeline pipeline = buffer.owner;
+        try {
+            if (pipeline.isCancelled()) {
+                return;
+            }
+            TrackState state = pipeline.getTrackState();
+            AudioTrack track = state.track;
+            if (track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                track.play();
+                state.headAtPlay = state.getHead();
+            }
+            pipeline.onWrite();
+            long trace = Tracer.begin("tts.writeAudio");
+            int result;
+            try {
+                result = track.write(buffer.samples, 0, buffer.length, AudioTrack.WRITE_BLOCKING);
+            } finally {
+                Tracer.end(trace);
+            }
+            if (result < 0) {
+                Log.e(TAG, "Error writing audio samples: " + result);
+            } else {
+                state.writtenFrames += result;
+            }
+        } finally {
+            buffer.owner = null;
+            free.add(buffer);
+        }
+    }
+
+    /**
+     * Handles the end marker of a pipeline: a cancelled one drops what the track still holds,
+     * any other waits for the playback head to pass its last frame.
+     */
+    private synchronized void end(AudioPlaybackPipeline pipeline) {
+        TrackState state = pipeline.getTrackState();
+        AudioTrack track = state.track;
+        if (pipeline.isCancelled()) {
+            if (track.getPlayState() == AudioTrack.PLAYSTATE_PAUSED) {
+                track.flush();
+                // Flushing resets the head, and the audio of pending pipelines is gone with it
+                state.writtenFrames = 0;
+                state.headAtPlay = 0;
+                completeAll(state);
+            }
+            pipeline.onPlayed();
+            return;
+        }
+
+        pipeline.endFrame = state.writtenFrames;
+        long remainingMs = state.getMillisUntil(pipeline.endFrame);
+        if (remainingMs == 0) {
+            pipeline.onPlayed();
+            return;
+        }
+        pipeline.deadlineMs = SystemClock.elapsedRealtime() + remainingMs + completionSlackMs;
+        state.pending.add(pipeline);
+
+        long head = state.getHead();
+        long missing = state.startThreshold - (state.writtenFrames - head);
+        if (filled.isEmpty() && head == state.headAtPlay && missing > 0) {
+            // A stream track only starts once it holds its start threshold, so pad short
+            // audio with just enough silence to make it play now rather than with the next
+            // utterance
+            int frames = track.write(state.silence, 0, (int) missing, AudioTrack.WRITE_NON_BLOCKING);
+            if (frames > 0) {
+                state.writtenFrames += frames;
+            }
+        }
+    }
+
+    /**
+     * Reports pipelines whose audio has been played, and returns whether any are still playing.
+     */
+    private synchronized boolean completePlayed() {
+        boolean playing = false;
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < trackList.size(); i++) {
+            TrackState state = trackList.get(i);
+            long head = state.getHead();
+            AudioPlaybackPipeline next;
+            while ((next = state.pending.peek()) != null && (next.endFrame <= head || now >= next.deadlineMs)) {
+                if (next.endFrame > head) {
+                    Log.w(TAG, "Playback head stalled at " + head + " of " + next.endFrame + ", completing anyway");
+                }
+                state.pending.poll();
+                next.onPlayed();
+            }
+            playing |= !state.pending.isEmpty();
+        }
+        return playing;
+    }
+
+    /**
+     * Milliseconds until the next pending pipeline is due to finish playing.
+     */
+    private synchronized long getWaitMs() {
+        long waitMs = idlePauseMs;
+        for (int i = 0; i < trackList.size(); i++) {
+            TrackState state = trackList.get(i);
+            AudioPlaybackPipeline next = state.pending.peek();
+            if (next != null) {
+                waitMs = Math.min(waitMs, Math.max(MIN_COMPLETION_POLL_MS, state.getMillisUntil(next.endFrame)));
+            }
+        }
+        return waitMs;
+    }
+
+    private void completeAll(TrackState state) {
+        AudioPlaybackPipeline pending;
+        while ((pending = state.pending.poll()) != null) {
+            pending.onPlayed();
+        }
+    }
+
+    private synchronized void pauseIdleTracks() {
+        for (int i = 0; i < trackList.size(); i++) {
+            AudioTrack track = trackList.get(i).track;
+            if (track.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
+                track.pause();
+            }
+        }
+    }
+}
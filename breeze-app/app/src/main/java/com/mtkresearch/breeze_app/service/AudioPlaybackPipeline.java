@@ -0,0 +1,165 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.util.Log;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plays one utterance through an {@link AudioOutputEngine} while the caller keeps
+ * synthesizing, so synthesis of the next chunk overlaps playback of the current one.
+ *
+ * Samples are copied into the engine's pooled buffers (applying the gain on the way), which
+ * the audio thread writes to the track in order. When every buffer is queued, {@link #write}
+ * blocks until the audio thread frees one, so synthesis never runs more than the pool ahead
+ * of playback. {@link #getPlayed} completes once the track has played the last sample.
+ */
+public class AudioPlaybackPipeline {
+    private static final String TAG = "AudioPlaybackPipeline";
+
+    private final AudioOutputEngine engine;
+    private final AudioOutputEngine.TrackState trackState;
+    private final Runnable onFirstAudio;
+    // Queued after the last buffer
+    private final AudioOutputEngine.Buffer end = new AudioOutputEngine.Buffer(0, true);
+    private final CompletableFuture<Void> played = new CompletableFuture<>();
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private volatile boolean cancelled = false;
+    private boolean started = false;
+
+    // Set on the audio thread once all audio is written
+    long endFrame;
+    long deadlineMs;
+
+    AudioPlaybackPipeline(AudioOutputEngine engine, AudioOutputEngine.TrackState trackState, Runnable onFirstAudio) {
+        this.engine = engine;
+        this.trackState = trackState;
+        this.onFirstAudio = onFirstAudio;
+        this.end.owner = this;
+    }
+
+    /**
+     * Queues samples for playback, blocking while all buffers are in use.
+     *
+     * @return false if the pipeline was cancelled
+     */
+    public boolean write(float[] samples) {
+        return write(samples, null, samples.length);
+    }
+
+    /**
+     * Queues 16-bit PCM, e.g. cached audio, converting it to float on the way.
+     */
+    public boolean write(short[] pcm) {
+        return write(null, pcm, pcm.length);
+    }
+
+    private boolean write(float[] samples, short[] pcm, int length) {
+        float gain = engine.getGain();
+        int offset = 0;
+        try {
+            while (offset < length) {
+                AudioOutputEngine.Buffer buffer = engine.takeFreeBuffer(this);
+                if (buffer == null) {
+                    return false;
+                }
+                int count = Math.min(buffer.samples.length, length - offset);
+                for (int i = 0; i < count; i++) {
+                    float sample = samples != null ? samples[offset + i] : pcm[offset + i] / 32768.0f;
+                    // Amplify while preventing clipping
+                    buffer.samples[i] = Math.max(-1.0f, Math.min(1.0f, sample * gain));
+                }
+                buffer.length = count;
+                offset += count;
+                engine.queue(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !cancelled;
+    }
+
+    /**
+     * Marks the end of the audio. Audio written after this is not played.
+     */
+    public void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        if (engine.isReleased()) {
+            onPlayed();
+            return;
+        }
+        try {
+            engine.queue(end);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onPlayed();
+        }
+    }
+
+    /**
+     * Completes once all audio up to {@link #finish} has been played, or dropped by
+     * {@link #cancel}. Completes on the audio thread, so dependents should be light or async.
+     */
+    public CompletableFuture<Void> getPlayed() {
+        return played;
+    }
+
+    /**
+     * Waits until all audio has been played.
+     *
+     * @return false on timeout
+     */
+    public boolean awaitPlayed(long timeoutMs) throws InterruptedException {
+        try {
+            played.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Drops queued audio and stops the track at once.
+     */
+    public void cancel() {
+        cancelled = true;
+        try {
+            // Also returns a blocking write on the audio thread early
+            trackState.track.pause();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Error pausing track", e);
+        }
+        finish();
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    AudioOutputEngine.TrackState getTrackState() {
+        return trackState;
+    }
+
+    // Called on the audio thread
+
+    void onWrite() {
+        if (!started) {
+            started = true;
+            if (onFirstAudio != null) {
+                onFirstAudio.run();
+            }
+        }
+    }
+
+    void onPlayed() {
+        played.complete(null);
+    }
+}
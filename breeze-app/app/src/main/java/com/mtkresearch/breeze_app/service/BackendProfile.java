@@ -0,0 +1,187 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.ModelFingerprint;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Calibration results for each LLM backend on this device, persisted in GAISettings.
+ *
+ * A profile is only valid for the models, app version and device it was measured on; any
+ * change yields a different key and the calibration runs again. The backends may run
+ * different models (the CPU .pte and the MTK model), so a backend is only ever picked over
+ * another one that runs the same model.
+ */
+public class BackendProfile {
+    private static final String TAG = "BackendProfile";
+
+    // Reference turn used to compare backends: a typical prompt and answer length
+    private static final int REFERENCE_PROMPT_TOKENS = 256;
+    private static final int REFERENCE_OUTPUT_TOKENS = 128;
+
+    public static class Metrics {
+        public final double prefillTokensPerSec;
+        public final double decodeTokensPerSec;
+        public final long timeToFirstTokenMs;
+        public final long peakMemoryKb;
+
+        public Metrics(double prefillTokensPerSec, double decodeTokensPerSec,
+                       long timeToFirstTokenMs, long peakMemoryKb) {
+            this.prefillTokensPerSec = prefillTokensPerSec;
+            this.decodeTokensPerSec = decodeTokensPerSec;
+            this.timeToFirstTokenMs = timeToFirstTokenMs;
+            this.peakMemoryKb = peakMemoryKb;
+        }
+
+        /**
+         * Estimated latency of the reference turn, used to rank backends.
+         */
+        public double getReferenceTurnMs() {
+            if (prefillTokensPerSec <= 0 || decodeTokensPerSec <= 0) {
+                return Double.MAX_VALUE;
+            }
+            return 1000.0 * (REFERENCE_PROMPT_TOKENS / prefillTokensPerSec
+                + REFERENCE_OUTPUT_TOKENS / decodeTokensPerSec);
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                .put("prefill_tps", prefillTokensPerSec)
+                .put("decode_tps", decodeTokensPerSec)
+                .put("ttft_ms", timeToFirstTokenMs)
+                .put("peak_memory_kb", peakMemoryKb);
+        }
+
+        static Metrics fromJson(JSONObject json) throws JSONException {
+            return new Metrics(
+                json.getDouble("prefill_tps"),
+                json.getDouble("decode_tps"),
+                json.getLong("ttft_ms"),
+                json.getLong("peak_memory_kb"));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("prefill %.1f tok/s, decode %.1f tok/s, TTFT %d ms, peak %d MB",
+                prefillTokensPerSec, decodeTokensPerSec, timeToFirstTokenMs, peakMemoryKb / 1024);
+        }
+    }
+
+    private final String key;
+    // Fingerprint of the model each backend runs
+    private final Map<String, String> backendModels;
+    private final Map<String, Metrics> results = new LinkedHashMap<>();
+
+    public BackendProfile(Context context, Map<String, String> backendModels) {
+        this.key = buildKey(context, backendModels);
+        this.backendModels = new LinkedHashMap<>(backendModels);
+    }
+
+    /**
+     * Builds the key a profile is valid for: the model of each backend, app version and device.
+     */
+    private static String buildKey(Context context, Map<String, String> backendModels) {
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<String, String> entry : backendModels.entrySet()) {
+            key.append(entry.getKey()).append('=').append(entry.getValue()).append('|');
+        }
+        return key + ModelFingerprint.getAppVersion(context) + "|" + ModelFingerprint.getDeviceId();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void putResult(String backend, Metrics metrics) {
+        results.put(backend, metrics);
+    }
+
+    public Metrics getResult(String backend) {
+        return results.get(backend);
+    }
+
+    public boolean isEmpty() {
+        return results.isEmpty();
+    }
+
+    /**
+     * Returns the backend with the lowest estimated reference turn latency among those that
+     * run the same model as {@code backend}, so the choice never changes which model
+     * answers. Returns null if none of them was calibrated.
+     */
+    public String getBestBackend(String backend) {
+        String model = backendModels.get(backend);
+        String best = null;
+        double bestMs = Double.MAX_VALUE;
+        for (Map.Entry<String, Metrics> entry : results.entrySet()) {
+            if (model == null || !model.equals(backendModels.get(entry.getKey()))) {
+                continue;
+            }
+            double turnMs = entry.getValue().getReferenceTurnMs();
+            if (turnMs < bestMs) {
+                bestMs = turnMs;
+                best = entry.getKey();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Loads the stored profile if it was measured for these models, app version and device,
+     * otherwise returns null.
+     */
+    public static BackendProfile load(Context context, Map<String, String> backendModels) {
+        String key = buildKey(context, backendModels);
+        SharedPreferences prefs = context.getSharedPreferences(AppConstants.PREFS_NAME, Context.MODE_PRIVATE);
+        String stored = prefs.getString(AppConstants.KEY_BACKEND_PROFILE, null);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(stored);
+            if (!key.equals(json.getString("key"))) {
+                Log.d(TAG, "Stored backend profile is for another model, app version or device");
+                return null;
+            }
+            BackendProfile profile = new BackendProfile(context, backendModels);
+            JSONObject backends = json.getJSONObject("backends");
+            Iterator<String> names = backends.keys();
+            while (names.hasNext()) {
+                String backend = names.next();
+                profile.putResult(backend, Metrics.fromJson(backends.getJSONObject(backend)));
+            }
+            return profile;
+        } catch (JSONException e) {
+            Log.w(TAG, "Discarding unreadable backend profile", e);
+            return null;
+        }
+    }
+
+    public void save(Context context) {
+        try {
+            JSONObject backends = new JSONObject();
+            for (Map.Entry<String, Metrics> entry : results.entrySet()) {
+                backends.put(entry.getKey(), entry.getValue().toJson());
+            }
+            JSONObject json = new JSONObject()
+                .put("key", key)
+                .put("backends", backends);
+            context.getSharedPreferences(AppConstants.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(AppConstants.KEY_BACKEND_PROFILE, json.toString())
+                .apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Error saving backend profile", e);
+        }
+    }
+}
@@ -1,19 +1,40 @@
 package com.mtkresearch.breeze_app.service;
 
 import android.app.Service;
+import android.content.ComponentCallbacks2;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.IBinder;
 import android.content.Context;
+import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 public abstract class BaseEngineService extends Service {
     protected static final String TAG = "BaseEngineService";
+
+    // Memory pressure tiers, from least to most aggressive
+    public static final int TRIM_TIER_NONE = 0;
+    public static final int TRIM_TIER_CACHES = 1;  // Drop caches that rebuild themselves
+    public static final int TRIM_TIER_IDLE = 2;    // Release idle engines (ASR, TTS, VLM)
+    public static final int TRIM_TIER_ALL = 3;     // Release everything not in use, including the LLM
+
     protected Context context;
     protected String backend = "mock"; // Default to mock backend
     protected boolean isInitialized = false;
 
+    // What was released under memory pressure, so it can be reloaded on next use
+    private final Set<String> releasedUnderPressure = new LinkedHashSet<>();
+    private CompletableFuture<Boolean> loadFuture;
+
+    // True when the engine is available but its model is only loaded on first use
+    private volatile boolean loadDeferred = false;
+
     public class LocalBinder<T extends BaseEngineService> extends Binder {
         @SuppressWarnings("unchecked")
         public T getService() {
@@ -36,6 +57,133 @@ public abstract class BaseEngineService extends Service {
     }
 
     public abstract CompletableFuture<Boolean> initialize();
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        handleMemoryPressure(getTrimTier(level), "trim level " + level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        handleMemoryPressure(TRIM_TIER_ALL, "low memory");
+    }
+
+    protected static int getTrimTier(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return TRIM_TIER_ALL;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return TRIM_TIER_IDLE;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return TRIM_TIER_CACHES;
+        }
+        return TRIM_TIER_NONE;
+    }
+
+    private void handleMemoryPressure(int tier, String reason) {
+        if (tier == TRIM_TIER_NONE) {
+            return;
+        }
+        List<String> released = releaseForMemoryPressure(tier);
+        if (released.isEmpty()) {
+            return;
+        }
+        synchronized (releasedUnderPressure) {
+            releasedUnderPressure.addAll(released);
+        }
+        Log.w(TAG, getClass().getSimpleName() + " released " + released + " on " + reason);
+    }
+
+    /**
+     * Releases what this engine can spare at the given tier. Resources that are in use
+     * must be kept. Returns a description of each released resource.
+     */
+    protected List<String> releaseForMemoryPressure(int tier) {
+        return Collections.emptyList();
+    }
+
+    public List<String> getReleasedUnderPressure() {
+        synchronized (releasedUnderPressure) {
+            return new ArrayList<>(releasedUnderPressure);
+        }
+    }
+
+    /**
+     * Returns true if the engine was unloaded by memory pressure and has not been reloaded.
+     */
+    public boolean wasReleasedUnderPressure() {
+        synchronized (releasedUnderPressure) {
+            return !isInitialized && !releasedUnderPressure.isEmpty();
+        }
+    }
+
+    /**
+     * Registers the engine as available without loading its model. The model is loaded
+     * on first use, or earlier by {@link #prewarm()}.
+     */
+    public void deferInitialization() {
+        if (!isInitialized) {
+            loadDeferred = true;
+        }
+    }
+
+    /**
+     * Returns true if the engine is not loaded but will load on next use, either because
+     * loading was deferred or because memory pressure unloaded it.
+     */
+    public boolean isLoadPending() {
+        return !isInitialized && (loadDeferred || wasReleasedUnderPressure());
+    }
+
+    /**
+     * Returns true if the engine is loaded or will load on next use.
+     */
+    public boolean isAvailable() {
+        return isInitialized || isLoadPending();
+    }
+
+    /**
+     * Loads the engine in the background if loading is pending. Concurrent callers share
+     * the same load.
+     */
+    public synchronized CompletableFuture<Boolean> ensureLoaded() {
+        if (isInitialized) {
+            synchronized (releasedUnderPressure) {
+                releasedUnderPressure.clear();
+            }
+            return CompletableFuture.completedFuture(true);
+        }
+        if (!isLoadPending()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (loadFuture == null || loadFuture.isDone()) {
+            Log.d(TAG, (loadDeferred ? "Loading " : "Reloading ") + getClass().getSimpleName()
+                + (loadDeferred ? " on first use" : " after memory pressure"));
+            loadFuture = initialize().whenComplete((success, throwable) -> {
+                if (Boolean.TRUE.equals(success)) {
+                    loadDeferred = false;
+                    synchronized (releasedUnderPressure) {
+                        releasedUnderPressure.clear();
+                    }
+                }
+            });
+        }
+        return loadFuture;
+    }
+
+    /**
+     * Starts loading the engine ahead of a predicted request, if loading is pending.
+     */
+    public void prewarm() {
+        if (isLoadPending()) {
+            ensureLoaded();
+        }
+    }
     
     public boolean isReady() {
         return isInitialized;
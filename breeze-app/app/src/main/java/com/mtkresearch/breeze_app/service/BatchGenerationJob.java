@@ -0,0 +1,363 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.executorch.ModelType;
+import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.PromptManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs a JSONL file of evaluation prompts back-to-back through the loaded model and appends
+ * one JSONL result per prompt, with timing, to an output file.
+ *
+ * Input lines look like {@code {"id": "q1", "prompt": "..."}}. The prompt is a user message
+ * that gets the chat system prompt, optionally after earlier turns given as
+ * {@code "history": [{"user": "...", "assistant": "..."}]}; with {@code "raw": true} it is
+ * sent as is. Prompts run sorted by their formatted text, so prompts that share a system
+ * prompt or history run next to each other and reuse the KV cache. The response cache is
+ * bypassed, so every item is really generated.
+ *
+ * Results are flushed after every item. A rerun with the same output file skips the ids it
+ * already contains, so an interrupted run resumes where it stopped.
+ */
+public class BatchGenerationJob {
+    private static final String TAG = "BatchGenerationJob";
+    private static final ModelType MODEL_TYPE = ModelType.LLAMA_3_2;
+
+    interface Generator {
+        /**
+         * Queues a generation that bypasses the response cache. {@code onFinished} runs on the
+         * generation thread with the metrics of the request once it has ended, or with null
+         * if it failed before generating.
+         */
+        GenerationRequest submit(String prompt, Consumer<GenerationMetrics.Sample> onFinished);
+
+        boolean cancel(long requestId);
+    }
+
+    public static class Summary {
+        private final int total;
+        private final int skipped;
+        private final int completed;
+        private final int failed;
+        private final long elapsedMs;
+        private final boolean cancelled;
+
+        Summary(int total, int skipped, int completed, int failed, long elapsedMs, boolean cancelled) {
+            this.total = total;
+            this.skipped = skipped;
+            this.completed = completed;
+            this.failed = failed;
+            this.elapsedMs = elapsedMs;
+            this.cancelled = cancelled;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /** Items already in the output file from an earlier run. */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d items: %d skipped, %d completed, %d failed in %d ms%s",
+                total, skipped, completed, failed, elapsedMs, cancelled ? " (cancelled)" : "");
+        }
+    }
+
+    private static class Item {
+        final String id;
+        final String prompt;
+
+        Item(String id, String prompt) {
+            this.id = id;
+            this.prompt = prompt;
+        }
+    }
+
+    private final Generator generator;
+    private final File inputFile;
+    private final File outputFile;
+    private final String backend;
+    private final String model;
+    private final CompletableFuture<Summary> result = new CompletableFuture<>();
+    private volatile boolean cancelled = false;
+    private volatile GenerationRequest current;
+
+    BatchGenerationJob(Generator generator, File inputFile, File outputFile, String backend, String model) {
+        this.generator = generator;
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.backend = backend;
+        this.model = model;
+    }
+
+    /**
+     * Starts the job on its own thread and returns a future that completes with the summary.
+     */
+    CompletableFuture<Summary> start() {
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(run());
+            } catch (Exception e) {
+                Log.e(TAG, "Batch generation failed", e);
+                result.completeExceptionally(e);
+            }
+        }, "llm-batch");
+        thread.start();
+        return result;
+    }
+
+    /**
+     * Stops after the current item, which is cancelled and not written, so a rerun repeats it.
+     */
+    void cancel() {
+        cancelled = true;
+        GenerationRequest request = current;
+        if (request != null) {
+            generator.cancel(request.getId());
+        }
+    }
+
+    boolean isDone() {
+        return result.isDone();
+    }
+
+    private Summary run() throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        List<Item> items = readItems();
+        Set<String> done = readCompletedIds();
+
+        List<Item> pending = new ArrayList<>();
+        for (Item item : items) {
+            if (!done.contains(item.id)) {
+                pending.add(item);
+            }
+        }
+        // Neighbours with a common prefix only prefill the part after it
+        pending.sort(Comparator.comparing(item -> item.prompt));
+        int skipped = items.size() - pending.size();
+        Log.i(TAG, String.format("Running %d of %d items from %s (%d already in %s)",
+            pending.size(), items.size(), inputFile, skipped, outputFile));
+
+        int completed = 0;
+        int failed = 0;
+        try (Writer writer = openOutput()) {
+            for (Item item : pending) {
+                if (cancelled) {
+                    break;
+                }
+                JSONObject record = runItem(item);
+                if (record == null) {
+                    break;  // Cancelled mid-item
+                }
+                if (record.has("error")) {
+                    failed++;
+                }
+                writer.write(record.toString());
+                writer.write('\n');
+                writer.flush();
+                completed++;
+                Log.d(TAG, String.format("Item %s done (%d/%d): %s", item.id, completed, pending.size(),
+                    record.optString("stop_reason", record.optString("error"))));
+            }
+        }
+
+        Summary summary = new Summary(items.size(), skipped, completed - failed, failed,
+            SystemClock.elapsedRealtime() - start, cancelled);
+        Log.i(TAG, "Batch generation finished: " + summary);
+        return summary;
+    }
+
+    /**
+     * Runs one item and returns its result record, or null if the job was cancelled meanwhile.
+     */
+    private JSONObject runItem(Item item) {
+        CompletableFuture<GenerationMetrics.Sample> finished = new CompletableFuture<>();
+        long start = SystemClock.elapsedRealtime();
+        GenerationRequest request = generator.submit(item.prompt, finished::complete);
+        current = request;
+        request.getFuture().whenComplete((response, throwable) -> {
+            // A request that failed or was cancelled in the queue never reports its metrics
+            if (throwable != null || request.isCancelled()) {
+                finished.complete(null);
+            }
+        });
+        String error = null;
+        GenerationMetrics.Sample sample = null;
+        try {
+            sample = finished.get(AppConstants.BATCH_ITEM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (sample == null) {
+                error = "generation failed";
+            }
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Item " + item.id + " timed out, cancelling");
+            generator.cancel(request.getId());
+            error = "timeout";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        } catch (Exception e) {
+            error = String.valueOf(e.getMessage());
+        } finally {
+            current = null;
+        }
+        if (cancelled) {
+            return null;
+        }
+
+        try {
+            JSONObject record = new JSONObject()
+                .put("id", item.id)
+                .put("model", model)
+                .put("backend", backend)
+                .put("response", request.getResponse())
+                .put("total_ms", SystemClock.elapsedRealtime() - start);
+            if (error != null) {
+                record.put("error", error);
+            }
+            if (sample != null) {
+                record.put("ttft_ms", sample.getTimeToFirstTokenMs())
+                    .put("prompt_tokens", sample.getPromptTokens())
+                    .put("output_tokens", sample.getOutputTokens())
+                    .put("prefill_tps", sample.getPrefillTokensPerSec())
+                    .put("decode_tps", sample.getDecodeTokensPerSec())
+                    .put("stop_reason", sample.getStopReason());
+            }
+            return record;
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<Item> readItems() throws IOException {
+        List<Item> items = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    JSONObject json = new JSONObject(line);
+                    String id = json.optString("id", String.valueOf(lineNumber));
+                    if (!ids.add(id)) {
+                        Log.w(TAG, "Skipping duplicate id " + id + " on line " + lineNumber);
+                        continue;
+                    }
+                    items.add(new Item(id, formatPrompt(json)));
+                } catch (JSONException e) {
+                    Log.w(TAG, "Skipping unreadable line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return items;
+    }
+
+    private static String formatPrompt(JSONObject json) throws JSONException {
+        String prompt = json.getString("prompt");
+        if (json.optBoolean("raw", false)) {
+            return prompt;
+        }
+        StringBuilder history = new StringBuilder();
+        JSONArray turns = json.optJSONArray("history");
+        if (turns != null) {
+            for (int i = 0; i < turns.length(); i++) {
+                JSONObject turn = turns.getJSONObject(i);
+                history.append(PromptManager.formatTurn(turn.getString("user"), turn.getString("assistant"), MODEL_TYPE));
+            }
+        }
+        return PromptManager.formatPromptWithHistory(prompt, history.toString(), MODEL_TYPE);
+    }
+
+    /**
+     * Returns the ids already in the output file. A line cut short by a crash is ignored,
+     * so its item runs again.
+     */
+    private Set<String> readCompletedIds() throws IOException {
+        Set<String> ids = new HashSet<>();
+        if (!outputFile.exists()) {
+            return ids;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(outputFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    ids.add(new JSONObject(line).getString("id"));
+                } catch (JSONException e) {
+                    Log.w(TAG, "Ignoring incomplete result line");
+                }
+            }
+        }
+        return ids;
+    }
+
+    private Writer openOutput() throws IOException {
+        File directory = outputFile.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        boolean needsNewline = false;
+        if (outputFile.length() > 0) {
+            try (RandomAccessFile file = new RandomAccessFile(outputFile, "r")) {
+                file.seek(file.length() - 1);
+                needsNewline = file.read() != '\n';
+            }
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(outputFile, true), StandardCharsets.UTF_8);
+        if (needsNewline) {
+            // Terminate a line cut short by a crash, so the next record starts on its own line
+            writer.write('\n');
+        }
+        return writer;
+    }
+}
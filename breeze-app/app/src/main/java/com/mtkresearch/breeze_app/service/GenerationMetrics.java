@@ -0,0 +1,261 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.os.SystemClock;
+
+import com.mtkresearch.breeze_app.utils.Histogram;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-backend performance of LLM generations: time to first token, prefill and decode rates
+ * and output length as histograms, plus how often each stop reason occurred.
+ *
+ * Each generation fills in a {@link Sample} while it runs and records it once it ends.
+ * Responses replayed from the response cache are not recorded, so the numbers describe the
+ * model and backend only and can be compared across model builds.
+ */
+public class GenerationMetrics {
+    public static final String STOP_EOS = "eos";                      // Model ended the response
+    public static final String STOP_SEQUENCE = "stop_sequence";       // A stop sequence matched
+    public static final String STOP_LENGTH = "length";                // Ran out of output tokens
+    public static final String STOP_CANCELLED = "cancelled";
+    public static final String STOP_ERROR = "error";
+
+    /**
+     * Measurements of one generation, filled in on the generation thread.
+     */
+    public static class Sample {
+        private final String backend;
+        private final long startMs = SystemClock.elapsedRealtime();
+        private long firstTokenMs = -1;
+        private long lastTokenMs = -1;
+        private int promptTokens = 0;
+        private int outputTokens = 0;
+        private float reportedDecodeRate = -1;
+        private String stopReason;
+
+        Sample(String backend) {
+            this.backend = backend;
+        }
+
+        /** Number of prompt tokens that had to be prefilled, i.e. not reused from a cache. */
+        void setPromptTokens(int promptTokens) {
+            this.promptTokens = promptTokens;
+        }
+
+        void onToken() {
+            long now = SystemClock.elapsedRealtime();
+            if (firstTokenMs < 0) {
+                firstTokenMs = now;
+            }
+            lastTokenMs = now;
+            outputTokens++;
+        }
+
+        /** Decode rate reported by the runtime, preferred over the measured one. */
+        void setReportedDecodeRate(float tokensPerSec) {
+            this.reportedDecodeRate = tokensPerSec;
+        }
+
+        public String getBackend() {
+            return backend;
+        }
+
+        public String getStopReason() {
+            return stopReason;
+        }
+
+        public int getPromptTokens() {
+            return promptTokens;
+        }
+
+        public int getOutputTokens() {
+            return outputTokens;
+        }
+
+        public long getTimeToFirstTokenMs() {
+            return firstTokenMs >= 0 ? firstTokenMs - startMs : -1;
+        }
+
+        /** Prefilled tokens per second, approximated by the time to first token. */
+        public double getPrefillTokensPerSec() {
+            long ttft = getTimeToFirstTokenMs();
+            return ttft > 0 && promptTokens > 0 ? promptTokens * 1000.0 / ttft : -1;
+        }
+
+        public double getDecodeTokensPerSec() {
+            if (reportedDecodeRate > 0) {
+                return reportedDecodeRate;
+            }
+            long decodeMs = lastTokenMs - firstTokenMs;
+            return outputTokens > 1 && decodeMs > 0 ? (outputTokens - 1) * 1000.0 / decodeMs : -1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "%s: TTFT %d ms, prefill %.1f tok/s (%d), decode %.1f tok/s (%d), stop %s",
+                backend, getTimeToFirstTokenMs(), getPrefillTokensPerSec(), promptTokens,
+                getDecodeTokensPerSec(), outputTokens, stopReason);
+        }
+    }
+
+    /**
+     * Histograms and stop reasons of one backend.
+     */
+    public static class BackendStats {
+        private final String backend;
+        private final Histogram timeToFirstTokenMs;
+        private final Histogram prefillTokensPerSec;
+        private final Histogram decodeTokensPerSec;
+        private final Histogram outputTokens;
+        private final Map<String, Long> stopReasons;
+
+        BackendStats(String backend) {
+            this(backend, new Histogram(1), new Histogram(0.01), new Histogram(0.01), new Histogram(1),
+                new LinkedHashMap<>());
+        }
+
+        private BackendStats(String backend, Histogram timeToFirstTokenMs, Histogram prefillTokensPerSec,
+                             Histogram decodeTokensPerSec, Histogram outputTokens, Map<String, Long> stopReasons) {
+            this.backend = backend;
+            this.timeToFirstTokenMs = timeToFirstTokenMs;
+            this.prefillTokensPerSec = prefillTokensPerSec;
+            this.decodeTokensPerSec = decodeTokensPerSec;
+            this.outputTokens = outputTokens;
+            this.stopReasons = stopReasons;
+        }
+
+        void record(Sample sample) {
+            if (sample.getTimeToFirstTokenMs() >= 0) {
+                timeToFirstTokenMs.record(sample.getTimeToFirstTokenMs());
+            }
+            if (sample.getPrefillTokensPerSec() > 0) {
+                prefillTokensPerSec.record(sample.getPrefillTokensPerSec());
+            }
+            if (sample.getDecodeTokensPerSec() > 0) {
+                decodeTokensPerSec.record(sample.getDecodeTokensPerSec());
+            }
+            outputTokens.record(sample.getOutputTokens());
+            Long count = stopReasons.get(sample.getStopReason());
+            stopReasons.put(sample.getStopReason(), count == null ? 1 : count + 1);
+        }
+
+        BackendStats copy() {
+            return new BackendStats(backend, timeToFirstTokenMs.copy(), prefillTokensPerSec.copy(),
+                decodeTokensPerSec.copy(), outputTokens.copy(), new LinkedHashMap<>(stopReasons));
+        }
+
+        public String getBackend() {
+            return backend;
+        }
+
+        public long getRequestCount() {
+            return outputTokens.getCount();
+        }
+
+        public Histogram getTimeToFirstTokenMs() {
+            return timeToFirstTokenMs;
+        }
+
+        public Histogram getPrefillTokensPerSec() {
+            return prefillTokensPerSec;
+        }
+
+        public Histogram getDecodeTokensPerSec() {
+            return decodeTokensPerSec;
+        }
+
+        public Histogram getOutputTokens() {
+            return outputTokens;
+        }
+
+        public Map<String, Long> getStopReasons() {
+            return stopReasons;
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                .put("requests", getRequestCount())
+                .put("ttft_ms", histogramToJson(timeToFirstTokenMs))
+                .put("prefill_tps", histogramToJson(prefillTokensPerSec))
+                .put("decode_tps", histogramToJson(decodeTokensPerSec))
+                .put("output_tokens", histogramToJson(outputTokens))
+                .put("stop_reasons", new JSONObject(stopReasons));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "%s (%d requests)\n  TTFT ms    %s\n  prefill/s  %s\n  decode/s   %s\n  output     %s\n  stop       %s",
+                backend, getRequestCount(), timeToFirstTokenMs, prefillTokensPerSec, decodeTokensPerSec,
+                outputTokens, stopReasons);
+        }
+    }
+
+    private final Map<String, BackendStats> stats = new LinkedHashMap<>();
+    private Sample lastSample;
+
+    /**
+     * Starts measuring a generation on the given backend.
+     */
+    public Sample begin(String backend) {
+        return new Sample(backend);
+    }
+
+    public synchronized void record(Sample sample, String stopReason) {
+        sample.stopReason = stopReason;
+        BackendStats backendStats = stats.get(sample.getBackend());
+        if (backendStats == null) {
+            backendStats = new BackendStats(sample.getBackend());
+            stats.put(sample.getBackend(), backendStats);
+        }
+        backendStats.record(sample);
+        lastSample = sample;
+    }
+
+    public synchronized Sample getLastSample() {
+        return lastSample;
+    }
+
+    /**
+     * Returns a copy of the stats of every backend that ran a generation.
+     */
+    public synchronized List<BackendStats> getStats() {
+        List<BackendStats> result = new ArrayList<>();
+        for (BackendStats backendStats : stats.values()) {
+            result.add(backendStats.copy());
+        }
+        return result;
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+        lastSample = null;
+    }
+
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject backends = new JSONObject();
+        for (BackendStats backendStats : stats.values()) {
+            backends.put(backendStats.getBackend(), backendStats.toJson());
+        }
+        return new JSONObject().put("backends", backends);
+    }
+
+    private static JSONObject histogramToJson(Histogram histogram) throws JSONException {
+        return new JSONObject()
+            .put("count", histogram.getCount())
+            .put("mean", histogram.getMean())
+            .put("p50", histogram.getPercentile(50))
+            .put("p90", histogram.getPercentile(90))
+            .put("p99", histogram.getPercentile(99))
+            .put("max", histogram.getMax());
+    }
+}
@@ -0,0 +1,125 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.os.SystemClock;
+
+import com.mtkresearch.breeze_app.utils.Tracer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Handle for a single queued or running generation. Each request owns its response buffer
+ * and result future, so concurrent requests never share generation state.
+ */
+public class GenerationRequest {
+    public static final int PRIORITY_INTERACTIVE = 0;  // Chat messages the user is waiting for
+    public static final int PRIORITY_BACKGROUND = 1;   // Title generation and other housekeeping
+
+    static final String STOPPED_RESPONSE = "[Generation stopped by user]";
+
+    private final long id;
+    private final int priority;
+    private final String prompt;
+    private final LLMEngineService.StreamingResponseCallback callback;
+    private final StringBuilder response = new StringBuilder();
+    private final CompletableFuture<String> future = new CompletableFuture<>();
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final long enqueueTimeMs = SystemClock.elapsedRealtime();
+    private final long enqueueTraceNs = Tracer.now();
+    private volatile long startTimeMs = -1;
+
+    GenerationRequest(long id, int priority, String prompt,
+                      LLMEngineService.StreamingResponseCallback callback) {
+        this.id = id;
+        this.priority = priority;
+        this.prompt = prompt;
+        this.callback = callback;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public CompletableFuture<String> getFuture() {
+        return future;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Returns true while tokens should still be delivered for this request.
+     */
+    public boolean isActive() {
+        return !cancelled.get() && !future.isDone();
+    }
+
+    /**
+     * Returns how long the request waited in the queue, or -1 if it has not started yet.
+     */
+    public long getWaitTimeMs() {
+        return startTimeMs < 0 ? -1 : startTimeMs - enqueueTimeMs;
+    }
+
+    long getEnqueueTraceNs() {
+        return enqueueTraceNs;
+    }
+
+    /**
+     * Appends a token to this request's buffer and forwards it to the caller.
+     */
+    public void deliverToken(String token) {
+        if (!isActive()) {
+            return;
+        }
+        synchronized (response) {
+            response.append(token);
+        }
+        if (callback != null) {
+            callback.onToken(token);
+        }
+    }
+
+    public String getResponse() {
+        synchronized (response) {
+            return response.toString();
+        }
+    }
+
+    /**
+     * Completes the request with what has been generated so far.
+     */
+    public void complete() {
+        future.complete(getResponse());
+    }
+
+    /**
+     * Completes a cancelled request with its partial response, or a placeholder if nothing
+     * was generated yet.
+     */
+    void completeCancelled() {
+        String partial = getResponse();
+        future.complete(partial.isEmpty() ? STOPPED_RESPONSE : partial);
+    }
+
+    void completeExceptionally(Throwable throwable) {
+        future.completeExceptionally(throwable);
+    }
+
+    boolean markCancelled() {
+        return cancelled.compareAndSet(false, true);
+    }
+
+    void markStarted() {
+        startTimeMs = SystemClock.elapsedRealtime();
+    }
+}
@@ -0,0 +1,230 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.util.Log;
+
+import com.mtkresearch.breeze_app.utils.Tracer;
+
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serializes generation requests onto a single worker thread, since the underlying model can
+ * only run one generation at a time. Requests are ordered by priority and then FIFO, and can
+ * be cancelled by id whether they are queued or running.
+ */
+public class GenerationScheduler {
+    private static final String TAG = "GenerationScheduler";
+
+    /**
+     * Runs one request on the worker thread. Implementations deliver tokens through
+     * {@link GenerationRequest#deliverToken} and may complete the request early.
+     */
+    public interface Task {
+        void run(GenerationRequest request) throws Exception;
+    }
+
+    /**
+     * Interrupts the backend while a request is running.
+     */
+    public interface StopHandler {
+        void stop(GenerationRequest request);
+    }
+
+    private static class Entry {
+        final GenerationRequest request;
+        final Task task;
+        final long sequence;
+
+        Entry(GenerationRequest request, Task task, long sequence) {
+            this.request = request;
+            this.task = task;
+            this.sequence = sequence;
+        }
+    }
+
+    private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>(11,
+        Comparator.<Entry>comparingInt(e -> e.request.getPriority()).thenComparingLong(e -> e.sequence));
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong nextSequence = new AtomicLong(0);
+    private final StopHandler stopHandler;
+    private final Thread worker;
+
+    // Guards changes of the running request, so a stop never reaches the next one
+    private final Object runningLock = new Object();
+    private volatile GenerationRequest running = null;
+    private volatile boolean shutdown = false;
+
+    // Contention stats
+    private final AtomicLong startedCount = new AtomicLong(0);
+    private final AtomicLong totalWaitTimeMs = new AtomicLong(0);
+    private volatile long lastWaitTimeMs = 0;
+    private volatile long maxWaitTimeMs = 0;
+
+    public GenerationScheduler(StopHandler stopHandler) {
+        this.stopHandler = stopHandler;
+        this.worker = new Thread(this::workLoop, "llm-generation");
+        this.worker.start();
+    }
+
+    /**
+     * Queues a request and returns its handle immediately.
+     */
+    public GenerationRequest submit(String prompt, int priority,
+                                    LLMEngineService.StreamingResponseCallback callback, Task task) {
+        GenerationRequest request = new GenerationRequest(nextId.getAndIncrement(), priority, prompt, callback);
+        if (shutdown) {
+            request.completeExceptionally(new IllegalStateException("Scheduler is shut down"));
+            return request;
+        }
+        queue.add(new Entry(request, task, nextSequence.getAndIncrement()));
+        Log.d(TAG, String.format("Queued request %d (priority %d), queue depth: %d",
+            request.getId(), priority, queue.size()));
+        return request;
+    }
+
+    /**
+     * Cancels a queued or running request. Running requests are stopped and complete with
+     * their partial response.
+     *
+     * @return false if no pending request has this id
+     */
+    public boolean cancel(long id) {
+        for (Entry entry : queue) {
+            if (entry.request.getId() == id && queue.remove(entry)) {
+                entry.request.markCancelled();
+                entry.request.completeCancelled();
+                Log.d(TAG, "Cancelled queued request " + id);
+                return true;
+            }
+        }
+
+        GenerationRequest current = running;
+        if (current != null && current.getId() == id) {
+            cancelRunning(current);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Cancels the request that is currently running, if any.
+     */
+    public GenerationRequest cancelCurrent() {
+        GenerationRequest current = running;
+        if (current != null) {
+            cancelRunning(current);
+        }
+        return current;
+    }
+
+    /**
+     * Cancels everything, queued and running.
+     */
+    public void cancelAll() {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            entry.request.markCancelled();
+            entry.request.completeCancelled();
+        }
+        cancelCurrent();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        cancelAll();
+        worker.interrupt();
+    }
+
+    public GenerationRequest getRunningRequest() {
+        return running;
+    }
+
+    public boolean isBusy() {
+        return running != null || !queue.isEmpty();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getLastWaitTimeMs() {
+        return lastWaitTimeMs;
+    }
+
+    public long getMaxWaitTimeMs() {
+        return maxWaitTimeMs;
+    }
+
+    public long getAverageWaitTimeMs() {
+        long count = startedCount.get();
+        return count == 0 ? 0 : totalWaitTimeMs.get() / count;
+    }
+
+    /**
+     * Stops a request only while it is still the running one. The stop handler interrupts
+     * whatever the backend is executing, so it must not run once the worker has moved on.
+     */
+    private void cancelRunning(GenerationRequest request) {
+        synchronized (runningLock) {
+            if (running != request || request.getFuture().isDone() || !request.markCancelled()) {
+                return;
+            }
+            Log.d(TAG, "Cancelling running request " + request.getId());
+            try {
+                stopHandler.stop(request);
+            } catch (Exception e) {
+                Log.e(TAG, "Error stopping request " + request.getId(), e);
+            }
+        }
+        request.completeCancelled();
+    }
+
+    private void workLoop() {
+        while (!shutdown) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            GenerationRequest request = entry.request;
+            if (request.getFuture().isDone()) {
+                continue;
+            }
+
+            request.markStarted();
+            Tracer.span("llm.queueWait", request.getEnqueueTraceNs(), Tracer.now());
+            long waitTime = request.getWaitTimeMs();
+            lastWaitTimeMs = waitTime;
+            maxWaitTimeMs = Math.max(maxWaitTimeMs, waitTime);
+            totalWaitTimeMs.addAndGet(waitTime);
+            startedCount.incrementAndGet();
+            Log.d(TAG, String.format("Running request %d after waiting %d ms, queue depth: %d",
+                request.getId(), waitTime, queue.size()));
+
+            synchronized (runningLock) {
+                running = request;
+            }
+            long trace = Tracer.begin("llm.request");
+            try {
+                entry.task.run(request);
+                request.complete();
+            } catch (Exception e) {
+                Log.e(TAG, "Error running request " + request.getId(), e);
+                if (request.isCancelled()) {
+                    request.completeCancelled();
+                } else {
+                    request.completeExceptionally(e);
+                }
+            } finally {
+                Tracer.end(trace);
+                synchronized (runningLock) {
+                    running = null;
+                }
+            }
+        }
+        Log.d(TAG, "Generation worker stopped");
+    }
+}
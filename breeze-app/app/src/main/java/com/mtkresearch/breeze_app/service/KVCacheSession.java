@@ -0,0 +1,237 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.util.Log;
+
+import com.mtkresearch.breeze_app.utils.TokenCounter;
+
+import org.pytorch.executorch.LlamaModule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks which part of the formatted prompt is already resident in the KV cache of a
+ * {@link LlamaModule}, so that follow-up chat turns only prefill the new text.
+ *
+ * Positions are recorded at turn boundaries (right after each stop token). Tokens produced
+ * during decoding are never trusted: the next turn rewinds to the last boundary shared with
+ * the new prompt and re-prefills from there, overwriting whatever was generated.
+ *
+ * A prefix (normally the system prompt) can be pinned right after the model is loaded. Resets
+ * rewind to the pinned prefix instead of position 0, so every new conversation starts decoding
+ * from the cached system prompt.
+ *
+ * All methods must be called from the thread that drives the module.
+ */
+public class KVCacheSession {
+    private static final String TAG = "KVCacheSession";
+
+    private static class Checkpoint {
+        final int textEnd;
+        final long position;
+
+        Checkpoint(int textEnd, long position) {
+            this.textEnd = textEnd;
+            this.position = position;
+        }
+    }
+
+    private final String turnDelimiter;
+    private final int contextWindow;
+    private final TokenCounter tokenCounter;
+    private final StringBuilder cachedText = new StringBuilder();
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    private String pinnedPrefix = null;
+    private boolean supported = true;
+    private boolean hasPrefilled = false;
+    private long lastReusedPositions = 0;
+    private long lastPrefilledPositions = 0;
+
+    public KVCacheSession(String turnDelimiter, int contextWindow, TokenCounter tokenCounter) {
+        this.turnDelimiter = turnDelimiter;
+        this.contextWindow = contextWindow;
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * Returns false once the module has rejected a prefill, by an error code or by throwing,
+     * e.g. when the runner does not support positional prefill for this model category.
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    public int getContextWindow() {
+        return contextWindow;
+    }
+
+    public long getCurrentPosition() {
+        return checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1).position;
+    }
+
+    public long getLastReusedPositions() {
+        return lastReusedPositions;
+    }
+
+    public long getLastPrefilledPositions() {
+        return lastPrefilledPositions;
+    }
+
+    /**
+     * Returns the number of positions held by the pinned prefix, or 0 if it is not resident.
+     */
+    public long getPinnedPositions() {
+        if (!isPinnedPrefixResident()) {
+            return 0;
+        }
+        for (Checkpoint checkpoint : checkpoints) {
+            if (checkpoint.textEnd == pinnedPrefix.length()) {
+                return checkpoint.position;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Prefills {@code prefix} from position 0 and keeps it across {@link #reset()} calls.
+     *
+     * @return the position right after the prefix, or -1 if it could not be prefilled
+     */
+    public long pin(LlamaModule module, String prefix) {
+        invalidate();
+        pinnedPrefix = null;
+        if (!prefix.endsWith(turnDelimiter)) {
+            Log.w(TAG, "Pinned prefix must end on a turn boundary, ignoring");
+            return -1;
+        }
+        long position = prefill(module, prefix, 0);
+        if (position >= 0) {
+            pinnedPrefix = prefix;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the index where the generation tail of the prompt starts, i.e. the text after
+     * the last turn delimiter (the assistant header). Everything before it can be cached.
+     */
+    public int findGenerationTailStart(String prompt) {
+        int idx = prompt.lastIndexOf(turnDelimiter);
+        return idx < 0 ? 0 : idx + turnDelimiter.length();
+    }
+
+    /**
+     * Makes sure {@code body} occupies the KV cache from position 0, reusing the longest
+     * cached prefix that ends on a turn boundary.
+     *
+     * @param reservedTokens tokens that must still fit after the body (tail and output)
+     * @return the position right after the body, or -1 if the caller should fall back to a
+     *         full {@code generate} from position 0
+     */
+    public long prefill(LlamaModule module, String body, int reservedTokens) {
+        lastReusedPositions = 0;
+        lastPrefilledPositions = 0;
+
+        if (!supported || body.isEmpty()) {
+            invalidate();
+            return -1;
+        }
+
+        rewindTo(commonPrefixLength(cachedText, body));
+
+        if (getCurrentPosition() + estimateTokens(body.substring(cachedText.length())) + reservedTokens > contextWindow) {
+            Log.d(TAG, "Context window exceeded, resetting session");
+            reset();
+            if (getCurrentPosition() + estimateTokens(body.substring(cachedText.length())) + reservedTokens > contextWindow) {
+                invalidate();
+                return -1;
+            }
+        }
+
+        long reused = getCurrentPosition();
+        long position = reused;
+        String delta = body.substring(cachedText.length());
+        int segmentStart = 0;
+        while (segmentStart < delta.length()) {
+            int idx = delta.indexOf(turnDelimiter, segmentStart);
+            int segmentEnd = idx < 0 ? delta.length() : idx + turnDelimiter.length();
+            String segment = delta.substring(segmentStart, segmentEnd);
+
+            long next;
+            try {
+                next = module.prefillPrompt(segment, position, 0, 0);
+            } catch (RuntimeException e) {
+                // Runtimes that only allow positional prefill for multimodal models throw
+                Log.w(TAG, "Positional prefill rejected by this module, disabling session mode", e);
+                supported = false;
+                invalidate();
+                return -1;
+            }
+            if (next < 0) {
+                Log.w(TAG, "Prefill failed with error code: " + next);
+                if (!hasPrefilled) {
+                    Log.w(TAG, "Positional prefill not supported by this module, disabling session mode");
+                    supported = false;
+                    invalidate();
+                } else {
+                    reset();
+                }
+                return -1;
+            }
+            hasPrefilled = true;
+            position = next;
+            cachedText.append(segment);
+            checkpoints.add(new Checkpoint(cachedText.length(), position));
+            segmentStart = segmentEnd;
+        }
+
+        lastReusedPositions = reused;
+        lastPrefilledPositions = position - reused;
+        Log.d(TAG, String.format("Reused %d cached positions, prefilled %d new positions",
+            lastReusedPositions, lastPrefilledPositions));
+        return position;
+    }
+
+    /**
+     * Drops everything after the pinned prefix (or everything, if nothing is pinned).
+     */
+    public void reset() {
+        rewindTo(isPinnedPrefixResident() ? pinnedPrefix.length() : 0);
+    }
+
+    /**
+     * Forgets everything in the cache, including the pinned prefix. Must be called whenever the
+     * module is driven from position 0 outside of this session (e.g. a plain {@code generate}
+     * call). The pinned prefix is prefilled again by the next {@link #prefill} that starts
+     * with it.
+     */
+    public void invalidate() {
+        cachedText.setLength(0);
+        checkpoints.clear();
+    }
+
+    private boolean isPinnedPrefixResident() {
+        return pinnedPrefix != null && cachedText.indexOf(pinnedPrefix) == 0;
+    }
+
+    private void rewindTo(int textLength) {
+        while (!checkpoints.isEmpty() && checkpoints.get(checkpoints.size() - 1).textEnd > textLength) {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+        cachedText.setLength(checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1).textEnd);
+    }
+
+    private int estimateTokens(String text) {
+        return tokenCounter.countTokens(text);
+    }
+
+    private static int commonPrefixLength(CharSequence a, CharSequence b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
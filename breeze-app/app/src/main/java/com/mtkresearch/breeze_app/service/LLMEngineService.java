@@ -1,7 +1,9 @@
 package com.mtkresearch.breeze_app.service;
 
 import android.content.Intent;
+import android.os.Debug;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.pytorch.executorch.LlamaModule;
@@ -11,14 +13,23 @@ import com.executorch.PromptFormat;
 import com.executorch.ModelType;
 import com.mtkresearch.breeze_app.utils.ConversationManager;
 import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.ModelFingerprint;
+import com.mtkresearch.breeze_app.utils.PromptManager;
+import com.mtkresearch.breeze_app.utils.StopSequenceMatcher;
+import com.mtkresearch.breeze_app.utils.Tracer;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class LLMEngineService extends BaseEngineService {
     private static final String TAG = "LLMEngineService";
@@ -26,23 +37,34 @@ public class LLMEngineService extends BaseEngineService {
     // Service state
     private String currentBackend = AppConstants.BACKEND_NONE;
     private String preferredBackend = AppConstants.BACKEND_DEFAULT;
-    private boolean hasSeenAssistantMarker = false;
     private final ConversationManager conversationManager;
     
-    // Generation state
-    private final AtomicBoolean isGenerating = new AtomicBoolean(false);
-    private CompletableFuture<String> currentResponse = new CompletableFuture<>();
-    private StreamingResponseCallback currentCallback = null;
-    private final StringBuilder currentStreamingResponse = new StringBuilder();
-    private ExecutorService executor;
+    // Generation requests run one at a time on the scheduler's worker thread
+    private GenerationScheduler scheduler;
+    private ResponseCache responseCache;
+    private BackendProfile backendProfile;
+    private volatile GenerationRequest calibrationRequest;
+    private BatchGenerationJob batchJob;
     
-    // CPU backend (LlamaModule)
-    private LlamaModule mModule = null;
+    // CPU backend (LlamaModule). The active module and its session come from the residency manager.
+    private ModelResidencyManager residencyManager;
+    private volatile LlamaModule mModule = null;
+    private KVCacheSession kvCacheSession = null;
     private String modelPath = null;  // Set from intent
+
+    // Generation stats
+    private final GenerationMetrics metrics = new GenerationMetrics();
+    private volatile long lastTimeToFirstTokenMs = -1;
+    private volatile long lastReusedPositions = 0;
+    private volatile long systemPrefixPositions = 0;
+    private volatile long systemPrefixPrefillMs = 0;
     
-    // MTK backend state
+    // MTK backend state. The native LLM is process-wide, so its lifecycle is static.
+    private static final String MTK_CONFIG_PATH = "/data/local/tmp/llm_sdk/config_breezetiny_3b_instruct.yaml";
     private static final Object MTK_LOCK = new Object();
+    private static final MTKBackendLifecycle mtkLifecycle = new MTKBackendLifecycle();
     private static int mtkInitCount = 0;
+    private MTKSessionPolicy mtkSessionPolicy;
     private static boolean isCleaningUp = false;
     private static final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor();
     
@@ -52,8 +74,7 @@ public class LLMEngineService extends BaseEngineService {
             try {
                 // Load libraries in order
                 System.loadLibrary("sigchain");  // Load signal handler first
-                Thread.sleep(100);  // Give time for signal handlers to initialize
-                
+
                 System.loadLibrary("llm_jni");
                 AppConstants.MTK_BACKEND_AVAILABLE = true;
                 Log.d(TAG, "Successfully loaded llm_jni library");
@@ -100,6 +121,14 @@ public class LLMEngineService extends BaseEngineService {
         void onToken(String token);
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        residencyManager = new ModelResidencyManager(this,
+            AppConstants.LLM_RESIDENCY_HEADROOM_BYTES,
+            AppConstants.LLM_MAX_RESIDENT_MODELS);
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return new LocalBinder();
@@ -135,8 +164,15 @@ public class LLMEngineService extends BaseEngineService {
             return START_NOT_STICKY;
         }
         
-        if (executor == null) {
-            executor = Executors.newSingleThreadExecutor();
+        if (scheduler == null) {
+            scheduler = new GenerationScheduler(this::stopBackend);
+        }
+        if (responseCache == null && AppConstants.LLM_RESPONSE_CACHE_ENABLED
+                && ResponseCache.isApplicable(AppConstants.LLM_TEMPERATURE)) {
+            responseCache = new ResponseCache(this,
+                AppConstants.LLM_RESPONSE_CACHE_MEMORY_ENTRIES,
+                AppConstants.LLM_RESPONSE_CACHE_DISK_ENTRIES,
+                AppConstants.LLM_RESPONSE_CACHE_DISK_BYTES);
         }
         return super.onStartCommand(intent, flags, startId);
     }
@@ -159,23 +195,22 @@ public class LLMEngineService extends BaseEngineService {
             try {
                 // Always release existing resources before initialization
                 releaseResources();
+
+                if (AppConstants.BACKEND_AUTOTUNE_ENABLED && isMTKBackendAvailable() && modelPath != null) {
+                    applyBackendProfile();
+                }
                 
                 // Try MTK backend only if it's preferred
                 if (preferredBackend.equals(AppConstants.BACKEND_MTK)) {
-                    // Add delay before trying MTK initialization
-                    Thread.sleep(AppConstants.BACKEND_INIT_DELAY_MS);
-                    
                     if (initializeMTKBackend()) {
                         currentBackend = AppConstants.BACKEND_MTK;
                         isInitialized = true;
                         Log.d(TAG, "Successfully initialized MTK backend");
                         future.complete(true);
+                        scheduleBackendCalibration();
                         return true;
                     }
                     Log.w(TAG, "MTK backend initialization failed");
-                    
-                    // Add delay before trying fallback
-                    Thread.sleep(AppConstants.BACKEND_INIT_DELAY_MS);
                 }
 
                 // Try CPU backend if MTK failed or CPU is preferred
@@ -185,6 +220,7 @@ public class LLMEngineService extends BaseEngineService {
                         isInitialized = true;
                         Log.d(TAG, "Successfully initialized CPU backend");
                         future.complete(true);
+                        scheduleBackendCalibration();
                         return true;
                     }
                     Log.w(TAG, "CPU backend initialization failed");
@@ -203,109 +239,257 @@ public class LLMEngineService extends BaseEngineService {
         return future;
     }
 
-    private static void cleanupMTKResources() {
-        synchronized (MTK_LOCK) {
-            if (isCleaningUp) return;
-            isCleaningUp = true;
-            
+    /**
+     * Picks the backend from the saved calibration profile of these models, app version and
+     * device, among the backends that run the same model as the preferred one. Without a
+     * profile the preferred backend is kept and calibration is queued once the service is
+     * ready. A backend chosen in the settings takes precedence.
+     */
+    private void applyBackendProfile() {
+        if (isBackendChosenInSettings()) {
+            Log.d(TAG, "Backend chosen in settings, skipping backend profile");
+            return;
+        }
+
+        BackendProfile profile = BackendProfile.load(this, getBackendModels());
+        if (profile != null) {
+            applyBackendProfile(profile);
+        }
+    }
+
+    private void applyBackendProfile(BackendProfile profile) {
+        backendProfile = profile;
+        String bestBackend = profile.getBestBackend(preferredBackend);
+        if (bestBackend != null) {
+            preferredBackend = bestBackend;
+            Log.d(TAG, "Backend profile selects " + bestBackend + ": " + profile.getResult(bestBackend));
+        }
+    }
+
+    /**
+     * Fingerprints of the model each backend runs: the CPU .pte file and the files next to
+     * the MTK config.
+     */
+    private Map<String, String> getBackendModels() {
+        Map<String, String> models = new LinkedHashMap<>();
+        models.put(AppConstants.BACKEND_CPU, ModelFingerprint.of(modelPath));
+        models.put(AppConstants.BACKEND_MTK, ModelFingerprint.ofDirectory(new File(MTK_CONFIG_PATH).getParent()));
+        return models;
+    }
+
+    private boolean isBackendChosenInSettings() {
+        return getSharedPreferences(AppConstants.PREFS_NAME, MODE_PRIVATE)
+            .contains(AppConstants.KEY_PREFERRED_BACKEND);
+    }
+
+    /**
+     * Queues calibration when these models have no backend profile yet. It runs as a
+     * background request after initialization, so startup only loads one backend. An
+     * interactive request cancels it (see {@link #cancelBackendCalibration}), and it runs
+     * again on the next initialization. The preferred backend is loaded afterwards.
+     */
+    private void scheduleBackendCalibration() {
+        if (!AppConstants.BACKEND_AUTOTUNE_ENABLED || !isMTKBackendAvailable() || modelPath == null
+                || backendProfile != null || isBackendChosenInSettings()) {
+            return;
+        }
+
+        if (scheduler == null) {
+            scheduler = new GenerationScheduler(this::stopBackend);
+        }
+        Map<String, String> backendModels = getBackendModels();
+        GenerationRequest calibration = scheduler.submit("", GenerationRequest.PRIORITY_BACKGROUND, null, request -> {
+            String previousBackend = currentBackend;
             try {
-                Log.d("LLMEngineService", "Performing emergency cleanup of MTK resources");
-                LLMEngineService tempInstance = new LLMEngineService();
-                
-                // Reset with timeout
-                Future<?> resetFuture = cleanupExecutor.submit(() -> {
-                    try {
-                        tempInstance.nativeResetLlm();
-                    } catch (Exception e) {
-                        Log.w("LLMEngineService", "Error during emergency reset", e);
-                    }
-                });
-                
-                try {
-                    resetFuture.get(AppConstants.MTK_NATIVE_OP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                } catch (TimeoutException e) {
-                    Log.w("LLMEngineService", "Reset operation timed out");
-                    resetFuture.cancel(true);
+                BackendProfile profile = calibrateBackends(backendModels, request);
+                if (!request.isCancelled()) {
+                    applyBackendProfile(profile);
                 }
-                
-                Thread.sleep(100);
-                
-                // Release with timeout
-                Future<?> releaseFuture = cleanupExecutor.submit(() -> {
-                    try {
-                        tempInstance.nativeReleaseLlm();
-                    } catch (Exception e) {
-                        Log.w("LLMEngineService", "Error during emergency release", e);
+            } finally {
+                // releaseResources() holds the lock until it clears isInitialized, so a
+                // calibration cancelled by it does not load a backend again
+                synchronized (MTK_LOCK) {
+                    if (isInitialized && !startBackend(preferredBackend) && !startBackend(previousBackend)) {
+                        Log.e(TAG, "No backend could be loaded after calibration");
+                        isInitialized = false;
                     }
-                });
-                
-                try {
-                    releaseFuture.get(AppConstants.MTK_NATIVE_OP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                } catch (TimeoutException e) {
-                    Log.w("LLMEngineService", "Release operation timed out");
-                    releaseFuture.cancel(true);
                 }
-                
-                // Reset state
-                mtkInitCount = 0;
-                
-                // Force garbage collection
-                System.gc();
-                Thread.sleep(100);
-                
+            }
+        });
+        calibrationRequest = calibration;
+        calibration.getFuture().exceptionally(throwable -> {
+            Log.e(TAG, "Error calibrating backends", throwable);
+            return null;
+        });
+    }
+
+    /**
+     * Cancels a running calibration so that a request the user is waiting for goes first.
+     * Calibration releases the live backend and loads both in turn, which would otherwise
+     * delay the request by several model loads.
+     */
+    private void cancelBackendCalibration() {
+        GenerationRequest calibration = calibrationRequest;
+        if (calibration != null && !calibration.getFuture().isDone()) {
+            Log.d(TAG, "Cancelling backend calibration for an interactive request");
+            scheduler.cancel(calibration.getId());
+        }
+    }
+
+    private boolean startBackend(String backend) {
+        boolean started = backend.equals(AppConstants.BACKEND_MTK) ? initializeMTKBackend()
+            : backend.equals(AppConstants.BACKEND_CPU) && initializeLocalCPUBackend();
+        if (started) {
+            currentBackend = backend;
+        }
+        return started;
+    }
+
+    /**
+     * Runs the calibration prompt on each backend and saves the results. Runs on the
+     * scheduler's worker thread; the current backend is released first and each calibrated
+     * backend afterwards, so the caller loads the chosen one from a clean state.
+     */
+    private BackendProfile calibrateBackends(Map<String, String> backendModels, GenerationRequest request) {
+        Log.d(TAG, "No backend profile for these models and device, calibrating");
+        BackendProfile profile = new BackendProfile(this, backendModels);
+        String prompt = PromptManager.formatCompletePrompt(
+            AppConstants.BACKEND_CALIBRATION_PROMPT, new ArrayList<>(), ModelType.LLAMA_3_2);
+        int promptTokens = PromptManager.countTokens(this, prompt);
+
+        releaseBackend();
+        for (String backend : new String[] { AppConstants.BACKEND_CPU, AppConstants.BACKEND_MTK }) {
+            if (request.isCancelled()) {
+                return profile;
+            }
+            try {
+                BackendProfile.Metrics metrics = calibrateBackend(backend, prompt, promptTokens);
+                if (metrics != null) {
+                    profile.putResult(backend, metrics);
+                    Log.i(TAG, "Calibrated " + backend + " backend: " + metrics);
+                }
             } catch (Exception e) {
-                Log.e("LLMEngineService", "Error during MTK cleanup", e);
+                Log.w(TAG, "Error calibrating " + backend + " backend", e);
             } finally {
-                isCleaningUp = false;
+                releaseBackend();
+            }
+        }
+
+        if (!profile.isEmpty() && !request.isCancelled()) {
+            profile.save(this);
+        }
+        return profile;
+    }
+
+    private BackendProfile.Metrics calibrateBackend(String backend, String prompt, int promptTokens) throws Exception {
+        CalibrationRun run;
+        if (backend.equals(AppConstants.BACKEND_CPU)) {
+            if (!initializeLocalCPUBackend()) {
+                return null;
+            }
+            currentBackend = AppConstants.BACKEND_CPU;
+            run = new CalibrationRun();
+            CalibrationRun cpuRun = run;
+            mModule.generate(prompt, promptTokens + AppConstants.BACKEND_CALIBRATION_OUTPUT_TOKENS,
+                new LlamaCallback() {
+                    @Override
+                    public void onResult(String token) {
+                        cpuRun.onToken();
+                    }
+
+                    @Override
+                    public void onStats(float tps) {
+                    }
+                }, false);
+        } else {
+            if (!initializeMTKBackend()) {
+                return null;
             }
+            currentBackend = AppConstants.BACKEND_MTK;
+            run = new CalibrationRun();
+            CalibrationRun mtkRun = run;
+            mtkLifecycle.run("calibrate", MTKBackendLifecycle.State.GENERATING,
+                MTKBackendLifecycle.State.READY, MTKBackendLifecycle.State.READY,
+                AppConstants.BACKEND_CALIBRATION_TIMEOUT_MS,
+                () -> nativeStreamingInference(prompt, AppConstants.BACKEND_CALIBRATION_OUTPUT_TOKENS,
+                    false, new TokenCallback() {
+                        @Override
+                        public void onToken(String token) {
+                            mtkRun.onToken();
+                        }
+                    }));
         }
+        return run.toMetrics(promptTokens);
     }
 
-    private void forceCleanupMTKResources() {
+    /**
+     * Token timings of one calibration generation. Memory is sampled at the first and the
+     * last token, when the model and the filled KV cache are resident.
+     */
+    private static class CalibrationRun {
+        private final long startMs = SystemClock.elapsedRealtime();
+        private long firstTokenMs = -1;
+        private long lastTokenMs = -1;
+        private int tokens = 0;
+        private long peakPssKb = 0;
+
+        void onToken() {
+            lastTokenMs = SystemClock.elapsedRealtime();
+            if (tokens++ == 0) {
+                firstTokenMs = lastTokenMs;
+                peakPssKb = Debug.getPss();
+            }
+        }
+
+        BackendProfile.Metrics toMetrics(int promptTokens) {
+            if (tokens == 0) {
+                return null;
+            }
+            peakPssKb = Math.max(peakPssKb, Debug.getPss());
+            long ttftMs = Math.max(1, firstTokenMs - startMs);
+            long decodeMs = lastTokenMs - firstTokenMs;
+            double decodeTokensPerSec = decodeMs > 0 ? (tokens - 1) * 1000.0 / decodeMs : 0;
+            return new BackendProfile.Metrics(promptTokens * 1000.0 / ttftMs,
+                decodeTokensPerSec, ttftMs, peakPssKb);
+        }
+    }
+
+    /**
+     * Releases the native LLM during process shutdown or service destruction, if it is loaded.
+     */
+    private static void cleanupMTKResources() {
         synchronized (MTK_LOCK) {
-            if (isCleaningUp) return;
+            if (isCleaningUp || !mtkLifecycle.isLoaded()) return;
             isCleaningUp = true;
             
             try {
-                Log.d(TAG, "Forcing cleanup of MTK resources");
-                
-                // Multiple cleanup attempts with timeouts
-                for (int i = 0; i < 3; i++) {
-                    Future<?> cleanupFuture = cleanupExecutor.submit(() -> {
-                        try {
-                            nativeResetLlm();
-                            Thread.sleep(100);
-                            nativeReleaseLlm();
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error during forced cleanup attempt", e);
-                        }
-                    });
-                    
-                    try {
-                        cleanupFuture.get(AppConstants.MTK_NATIVE_OP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                    } catch (TimeoutException e) {
-                        Log.w(TAG, "Cleanup attempt " + (i+1) + " timed out");
-                        cleanupFuture.cancel(true);
-                    }
-                    
-                    Thread.sleep(200);
-                }
-                
-                // Reset state
-                mtkInitCount = 0;
-                
-                // Force garbage collection
-                System.gc();
-                Thread.sleep(200);
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error during forced cleanup", e);
+                Log.d(TAG, "Performing emergency cleanup of MTK resources");
+                releaseNativeLlm(new LLMEngineService());
             } finally {
                 isCleaningUp = false;
             }
         }
     }
 
+    /**
+     * Resets and releases the native LLM on the native thread. Also used after a failed
+     * initialization, when the lifecycle is unloaded but native state may be partial.
+     */
+    private static void releaseNativeLlm(LLMEngineService instance) {
+        try {
+            mtkLifecycle.run("release", MTKBackendLifecycle.State.RESETTING,
+                MTKBackendLifecycle.State.RELEASED, MTKBackendLifecycle.State.RELEASED,
+                AppConstants.MTK_CLEANUP_TIMEOUT_MS, () -> {
+                    instance.nativeResetLlm();
+                    instance.nativeReleaseLlm();
+                    return null;
+                });
+        } catch (Exception e) {
+            Log.w(TAG, "Error releasing MTK resources", e);
+        }
+        mtkInitCount = 0;
+    }
+
     private boolean initializeMTKBackend() {
         if (!AppConstants.MTK_BACKEND_AVAILABLE) {
             Log.d(TAG, "MTK backend disabled, skipping");
@@ -318,87 +502,40 @@ public class LLMEngineService extends BaseEngineService {
                 return false;
             }
 
-            try {
-                // Force cleanup if we've hit the max init attempts
-                if (mtkInitCount >= AppConstants.MAX_MTK_INIT_ATTEMPTS) {
-                    Log.w(TAG, "MTK init count exceeded limit, forcing cleanup");
-                    forceCleanupMTKResources();
-                    mtkInitCount = 0;
-                    Thread.sleep(1000);  // Wait for cleanup to complete
-                }
-
-                // Add delay before initialization
-                Thread.sleep(AppConstants.BACKEND_INIT_DELAY_MS);
-                
-                // Initialize signal handlers first
-                try {
-                    System.loadLibrary("sigchain");
-                    Thread.sleep(100);
-                } catch (UnsatisfiedLinkError e) {
-                    Log.w(TAG, "Failed to load sigchain library", e);
-                }
+            // Native state left over from earlier attempts is released before loading again
+            if (mtkInitCount >= AppConstants.MAX_MTK_INIT_ATTEMPTS || mtkLifecycle.isLoaded()) {
+                Log.w(TAG, "Releasing MTK resources before initialization (init count " + mtkInitCount + ")");
+                releaseNativeLlm(this);
+            }
 
-                Log.d(TAG, "Attempting MTK backend initialization...");
-                
-                boolean success = false;
-                try {
-                    // Reset state before initialization
-                    nativeResetLlm();
-                    Thread.sleep(100);
-                    
-                    // Initialize with conservative settings
-                    success = nativeInitLlm("/data/local/tmp/llm_sdk/config_breezetiny_3b_instruct.yaml", true);
-                    
-                    if (!success) {
-                        Log.e(TAG, "MTK initialization returned false");
-                        cleanupAfterError();
-                        return false;
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error during MTK initialization", e);
-                    cleanupAfterError();
-                    return false;
-                }
-                
-                if (success) {
-                    mtkInitCount++;
-                    Log.d(TAG, "MTK initialization successful. Init count: " + mtkInitCount);
-                    return true;
-                } else {
-                    Log.e(TAG, "MTK initialization failed");
-                    cleanupAfterError();
-                    return false;
-                }
+            Log.d(TAG, "Attempting MTK backend initialization...");
+            try {
+                mtkLifecycle.run("init", MTKBackendLifecycle.State.LOADING,
+                    MTKBackendLifecycle.State.READY, MTKBackendLifecycle.State.UNLOADED,
+                    AppConstants.LLM_INIT_TIMEOUT_MS, () -> {
+                        if (!nativeInitLlm(MTK_CONFIG_PATH, true)) {
+                            throw new IllegalStateException("MTK initialization returned false");
+                        }
+                        return null;
+                    });
             } catch (Exception e) {
-                Log.e(TAG, "Error initializing MTK backend", e);
-                cleanupAfterError();
+                Log.e(TAG, "Error during MTK initialization", e);
+                releaseNativeLlm(this);
                 return false;
             }
-        }
-    }
 
-    private void cleanupAfterError() {
-        try {
-            // Force cleanup in a separate thread with timeout
-            Thread cleanupThread = new Thread(() -> {
-                try {
-                    nativeResetLlm();
-                    Thread.sleep(100);
-                    nativeReleaseLlm();
-                } catch (Exception e) {
-                    Log.w(TAG, "Error during error cleanup", e);
-                }
-            });
-            
-            cleanupThread.start();
-            cleanupThread.join(AppConstants.MTK_CLEANUP_TIMEOUT_MS);
-            
-            if (cleanupThread.isAlive()) {
-                Log.w(TAG, "Cleanup thread timed out, interrupting");
-                cleanupThread.interrupt();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error during cleanup after error", e);
+            mtkInitCount++;
+            mtkSessionPolicy = new MTKSessionPolicy(
+                PromptManager.getTokenCounter(this),
+                AppConstants.MTK_CONTEXT_TOKENS,
+                AppConstants.MTK_PROMPT_TOKEN_SIZE,
+                AppConstants.MTK_SWAP_MIN_PROMPT_TOKENS,
+                AppConstants.MTK_MAX_RESPONSE_TOKENS
+            );
+            Log.d(TAG, String.format("MTK initialization successful in %d ms. Init count: %d",
+                mtkLifecycle.getLastTransitionMs(MTKBackendLifecycle.State.LOADING, MTKBackendLifecycle.State.READY),
+                mtkInitCount));
+            return true;
         }
     }
 
@@ -406,28 +543,12 @@ public class LLMEngineService extends BaseEngineService {
         try {
             Log.d(TAG, "Attempting Local CPU backend initialization...");
 
-            if (mModule != null) {
-                mModule.resetNative();
-                mModule = null;
-            }
-
             if (modelPath == null) {
                 Log.e(TAG, "Model path is null, cannot initialize");
                 return false;
             }
 
-            // Initialize LlamaModule with model parameters
-            mModule = new LlamaModule(
-                ModelUtils.getModelCategory(ModelType.LLAMA_3_2),
-                modelPath,
-                AppConstants.getTokenizerPath(this),
-                AppConstants.LLM_TEMPERATURE
-            );
-
-            // Load the model
-            int loadResult = mModule.load();
-            if (loadResult != 0) {
-                Log.e(TAG, "Failed to load model: " + loadResult);
+            if (!activateCpuModel(modelPath)) {
                 return false;
             }
 
@@ -439,75 +560,176 @@ public class LLMEngineService extends BaseEngineService {
         }
     }
 
+    /**
+     * Makes a model the active CPU model. Resident models are reused as they are, together
+     * with their KV cache session; other models are loaded, evicting idle ones if needed.
+     * If the load fails, the previous model is made active again, reloading it if it was
+     * released to make room.
+     */
+    private boolean activateCpuModel(String path) {
+        String previousPath = modelPath;
+        // Loading may release the active model to make room, so it must not be used meanwhile
+        mModule = null;
+        kvCacheSession = null;
+        ModelResidencyManager.ResidentModel resident = residencyManager.acquire(path, this::loadCpuModel);
+        if (resident != null) {
+            useResidentModel(path, resident);
+            return true;
+        }
+
+        // Go back to the previous model, which is still resident unless it was released
+        ModelResidencyManager.ResidentModel previous = previousPath != null && !previousPath.equals(path)
+            ? residencyManager.acquire(previousPath, this::loadCpuModel) : null;
+        if (previous != null) {
+            useResidentModel(previousPath, previous);
+        } else {
+            isInitialized = false;
+        }
+        return false;
+    }
+
+    private void useResidentModel(String path, ModelResidencyManager.ResidentModel resident) {
+        mModule = resident.getModule();
+        modelPath = path;
+        if (resident.getSession() != null) {
+            kvCacheSession = resident.getSession();
+            return;
+        }
+
+        kvCacheSession = new KVCacheSession(
+            PromptFormat.getStopToken(ModelType.LLAMA_3_2),
+            AppConstants.getLLMContextWindow(this),
+            PromptManager.getTokenCounter(this)
+        );
+        resident.setSession(kvCacheSession);
+        if (AppConstants.LLM_KV_CACHE_REUSE_ENABLED) {
+            pinSystemPrefix();
+        }
+    }
+
+    private LlamaModule loadCpuModel(String path) {
+        // Initialize LlamaModule with model parameters
+        LlamaModule module = new LlamaModule(
+            ModelUtils.getModelCategory(ModelType.LLAMA_3_2),
+            path,
+            AppConstants.getTokenizerPath(this),
+            AppConstants.LLM_TEMPERATURE
+        );
+
+        // Load the model
+        int loadResult = module.load();
+        if (loadResult != 0) {
+            Log.e(TAG, "Failed to load model: " + loadResult);
+            module.resetNative();
+            return null;
+        }
+        return module;
+    }
+
+    /**
+     * Switches the CPU backend to another model. Switching to a resident model only swaps
+     * the active module. The switch runs on the generation thread, so it never races a
+     * running generation.
+     */
+    public CompletableFuture<Boolean> switchModel(String path) {
+        if (!isInitialized || !currentBackend.equals(AppConstants.BACKEND_CPU)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (path.equals(modelPath)) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        if (scheduler == null) {
+            scheduler = new GenerationScheduler(this::stopBackend);
+        }
+        cancelBackendCalibration();
+        return scheduler.submit("", GenerationRequest.PRIORITY_INTERACTIVE, null, request -> {
+            if (!activateCpuModel(path)) {
+                throw new IllegalStateException("Failed to switch to model: " + path);
+            }
+        }).getFuture().handle((response, throwable) -> {
+            if (throwable != null) {
+                Log.e(TAG, "Error switching model", throwable);
+                return false;
+            }
+            return path.equals(modelPath);
+        });
+    }
+
+    public boolean isModelResident(String path) {
+        return residencyManager != null && residencyManager.isResident(path);
+    }
+
+    public List<String> getResidentModelPaths() {
+        return residencyManager != null ? residencyManager.getResidentModelPaths() : new ArrayList<>();
+    }
+
+    public void addModelResidencyListener(ModelResidencyManager.Listener listener) {
+        if (residencyManager != null) {
+            residencyManager.addListener(listener);
+        }
+    }
+
+    public void removeModelResidencyListener(ModelResidencyManager.Listener listener) {
+        if (residencyManager != null) {
+            residencyManager.removeListener(listener);
+        }
+    }
+
+    /**
+     * Prefills the system prompt once so that every conversation starts decoding from the
+     * cached prefix instead of prefilling it again on its first message.
+     */
+    private void pinSystemPrefix() {
+        long start = SystemClock.elapsedRealtime();
+        long positions = kvCacheSession.pin(mModule, PromptManager.getSystemPrompt(ModelType.LLAMA_3_2));
+        systemPrefixPrefillMs = SystemClock.elapsedRealtime() - start;
+        systemPrefixPositions = Math.max(positions, 0);
+        if (positions >= 0) {
+            Log.d(TAG, String.format("Pinned system prefix: %d positions in %d ms",
+                positions, systemPrefixPrefillMs));
+        } else {
+            Log.w(TAG, "Failed to pin system prefix, prompts will be prefilled in full");
+        }
+    }
+
     public CompletableFuture<String> generateResponse(String prompt) {
+        return generateResponse(prompt, GenerationRequest.PRIORITY_BACKGROUND);
+    }
+
+    /**
+     * Generates a complete response without streaming. Non-streaming calls default to
+     * background priority so they never delay a chat message the user is waiting for.
+     */
+    public CompletableFuture<String> generateResponse(String prompt, int priority) {
         if (!isInitialized) {
+            if (isLoadPending()) {
+                return ensureLoaded().thenCompose(success -> success
+                    ? generateResponse(prompt, priority)
+                    : CompletableFuture.completedFuture(AppConstants.LLM_ERROR_RESPONSE));
+            }
             return CompletableFuture.completedFuture(AppConstants.LLM_ERROR_RESPONSE);
         }
 
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                switch (currentBackend) {
-                    case AppConstants.BACKEND_MTK:
-                        String response = nativeInference(prompt, 256, false);
-                        nativeResetLlm();
-                        nativeSwapModel(128);
-                        return response;
-                    case AppConstants.BACKEND_CPU:
-                        try {
-                            // Calculate sequence length based on prompt length, matching original implementation
-                            int seqLen = (int)(prompt.length() * 0.75) + 64;  // Original Llama runner formula
-                            
-                            CompletableFuture<String> future = new CompletableFuture<>();
-                            currentResponse = future;
-                            
-                            executor.execute(() -> {
-                                try {
-                                    mModule.generate(prompt, seqLen, new LlamaCallback() {
-                                        @Override
-                                        public void onResult(String result) {
-                                            if (!isGenerating.get() || 
-                                                result.equals(PromptFormat.getStopToken(ModelType.LLAMA_3_2))) {
-                                                return;
-                                            }
-                                            currentStreamingResponse.append(result);
-                                        }
-
-                                        @Override
-                                        public void onStats(float tps) {
-                                            Log.d(TAG, String.format("Generation speed: %.2f tokens/sec", tps));
-                                        }
-                                    }, false);
-                                    
-                                    // Only complete if we haven't been stopped
-                                    if (isGenerating.get()) {
-                                        currentResponse.complete(currentStreamingResponse.toString());
-                                    }
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error in CPU generation", e);
-                                    if (!currentResponse.isDone()) {
-                                        currentResponse.completeExceptionally(e);
-                                    }
-                                } finally {
-                                    isGenerating.set(false);
-                                }
-                            });
-                            
-                            return future.get(60000, TimeUnit.MILLISECONDS);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error in CPU streaming response", e);
-                            throw e;
-                        }
-                    default:
-                        return AppConstants.LLM_ERROR_RESPONSE;
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error generating response", e);
+        return submitGeneration(prompt, priority, null).getFuture()
+            .exceptionally(throwable -> {
+                Log.e(TAG, "Error generating response", throwable);
                 return AppConstants.LLM_ERROR_RESPONSE;
-            }
-        });
+            });
     }
 
     public CompletableFuture<String> generateStreamingResponse(String prompt, StreamingResponseCallback callback) {
+        if (isLoadPending()) {
+            return ensureLoaded().thenCompose(success -> {
+                if (success) {
+                    return generateStreamingResponse(prompt, callback);
+                }
+                if (callback != null) {
+                    callback.onToken(AppConstants.LLM_ERROR_RESPONSE);
+                }
+                return CompletableFuture.completedFuture(AppConstants.LLM_ERROR_RESPONSE);
+            });
+        }
         if (!isInitialized) {
             if (callback != null) {
                 callback.onToken(AppConstants.LLM_ERROR_RESPONSE);
@@ -515,188 +737,406 @@ public class LLMEngineService extends BaseEngineService {
             return CompletableFuture.completedFuture(AppConstants.LLM_ERROR_RESPONSE);
         }
 
-        hasSeenAssistantMarker = false;
-        currentCallback = callback;
-        currentResponse = new CompletableFuture<>();
-        currentStreamingResponse.setLength(0);
-        isGenerating.set(true);
-        
-        CompletableFuture<String> resultFuture = new CompletableFuture<>();
-        
-        CompletableFuture.runAsync(() -> {
+        return submitGeneration(prompt, GenerationRequest.PRIORITY_INTERACTIVE, callback).getFuture();
+    }
+
+    /**
+     * Queues a generation and returns its handle, which can be used to cancel it by id.
+     */
+    public GenerationRequest submitGeneration(String prompt, int priority, StreamingResponseCallback callback) {
+        if (scheduler == null) {
+            scheduler = new GenerationScheduler(this::stopBackend);
+        }
+        if (priority == GenerationRequest.PRIORITY_INTERACTIVE) {
+            cancelBackendCalibration();
+        }
+        return scheduler.submit(prompt, priority, callback, this::runGeneration);
+    }
+
+    /**
+     * Runs a JSONL file of prompts back-to-back and appends the results to {@code outputFile},
+     * skipping ids it already contains. See {@link BatchGenerationJob} for the file formats.
+     * Batch items run at background priority, so chat messages still go first.
+     */
+    public synchronized CompletableFuture<BatchGenerationJob.Summary> startBatch(File inputFile, File outputFile) {
+        if (batchJob != null && !batchJob.isDone()) {
+            CompletableFuture<BatchGenerationJob.Summary> busy = new CompletableFuture<>();
+            busy.completeExceptionally(new IllegalStateException("A batch is already running"));
+            return busy;
+        }
+        if (!isInitialized) {
+            CompletableFuture<BatchGenerationJob.Summary> notReady = new CompletableFuture<>();
+            notReady.completeExceptionally(new IllegalStateException("LLM is not initialized"));
+            return notReady;
+        }
+        batchJob = new BatchGenerationJob(new BatchGenerationJob.Generator() {
+            @Override
+            public GenerationRequest submit(String prompt, Consumer<GenerationMetrics.Sample> onFinished) {
+                return submitUncachedGeneration(prompt, onFinished);
+            }
+
+            @Override
+            public boolean cancel(long requestId) {
+                return cancelGeneration(requestId);
+            }
+        }, inputFile, outputFile, currentBackend, getModelName());
+        return batchJob.start();
+    }
+
+    public synchronized void cancelBatch() {
+        if (batchJob != null) {
+            batchJob.cancel();
+        }
+    }
+
+    public synchronized boolean isBatchRunning() {
+        return batchJob != null && !batchJob.isDone();
+    }
+
+    private GenerationRequest submitUncachedGeneration(String prompt, Consumer<GenerationMetrics.Sample> onFinished) {
+        if (scheduler == null) {
+            scheduler = new GenerationScheduler(this::stopBackend);
+        }
+        return scheduler.submit(prompt, GenerationRequest.PRIORITY_BACKGROUND, null, request -> {
+            GenerationMetrics.Sample sample = null;
             try {
-                switch (currentBackend) {
-                    case AppConstants.BACKEND_MTK:
-                        try {
-                            // MTK backend uses raw prompt without formatting
-                            executor.execute(() -> {
-                                try {
-                                    String response = nativeStreamingInference(prompt, 256, false, new TokenCallback() {
-                                        @Override
-                                        public void onToken(String token) {
-                                            if (callback != null && isGenerating.get()) {
-                                                callback.onToken(token);
-                                                currentStreamingResponse.append(token);
-                                            }
-                                        }
-                                    });
-                                    
-                                    // Only complete if we haven't been stopped
-                                    if (isGenerating.get()) {
-                                        currentResponse.complete(response);
-                                        resultFuture.complete(response);
-                                    }
-                                    
-                                    // Clean up MTK state
-                                    try {
-                                        nativeResetLlm();
-                                        nativeSwapModel(128);
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "Error resetting MTK state after generation", e);
-                                    }
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error in MTK streaming generation", e);
-                                    if (!currentResponse.isDone()) {
-                                        currentResponse.completeExceptionally(e);
-                                        resultFuture.completeExceptionally(e);
-                                    }
-                                } finally {
-                                    isGenerating.set(false);
-                                }
+                sample = runGeneration(request, false);
+            } finally {
+                onFinished.accept(sample);
+            }
+        });
+    }
+
+    private void runGeneration(GenerationRequest request) throws Exception {
+        runGeneration(request, true);
+    }
+
+    /**
+     * Runs a request on the scheduler's worker thread using the current backend. Returns the
+     * request's metrics, or null if it was answered from the response cache.
+     */
+    private GenerationMetrics.Sample runGeneration(GenerationRequest request, boolean useResponseCache) throws Exception {
+        String prompt = request.getPrompt();
+
+        String cacheKey = null;
+        if (responseCache != null && useResponseCache) {
+            cacheKey = ResponseCache.buildKey(prompt, modelPath, AppConstants.LLM_TEMPERATURE, currentBackend);
+            String cachedResponse = responseCache.get(cacheKey);
+            if (cachedResponse != null) {
+                Log.d(TAG, String.format("Response cache hit (%d hits, %d misses)",
+                    responseCache.getHitCount(), responseCache.getMissCount()));
+                Tracer.instant("llm.cacheHit");
+                replayCachedResponse(request, cachedResponse);
+                return null;
+            }
+        }
+
+        GenerationMetrics.Sample sample = metrics.begin(currentBackend);
+        String stopReason;
+        try {
+            stopReason = runBackendGeneration(request, sample);
+        } catch (Exception e) {
+            metrics.record(sample, GenerationMetrics.STOP_ERROR);
+            throw e;
+        }
+        metrics.record(sample, request.isCancelled() ? GenerationMetrics.STOP_CANCELLED : stopReason);
+        Log.d(TAG, "Generation metrics: " + sample);
+
+        // Partial responses of cancelled requests are never cached
+        if (cacheKey != null && !request.isCancelled()) {
+            responseCache.put(cacheKey, request.getResponse());
+        }
+        return sample;
+    }
+
+    /**
+     * Generates the response for a request on the current backend, filling in its metrics
+     * sample. Returns why the generation stopped, one of the GenerationMetrics.STOP_* reasons.
+     */
+    private String runBackendGeneration(GenerationRequest request, GenerationMetrics.Sample sample) throws Exception {
+        String prompt = request.getPrompt();
+        switch (currentBackend) {
+            case AppConstants.BACKEND_MTK:
+                // Reset and swap only when this prompt needs it, see MTKSessionPolicy
+                MTKSessionPolicy.Plan plan = mtkSessionPolicy.plan(prompt);
+                if (plan.needsPreparation()) {
+                    try {
+                        mtkLifecycle.run("prepare", MTKBackendLifecycle.State.RESETTING,
+                            MTKBackendLifecycle.State.READY, MTKBackendLifecycle.State.UNLOADED,
+                            AppConstants.MTK_NATIVE_OP_TIMEOUT_MS, () -> {
+                                prepareMtkContext(plan);
+                                return null;
                             });
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error in MTK streaming response", e);
-                            throw e;
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error preparing MTK state, backend needs reinitialization", e);
+                        isInitialized = false;
+                        throw e;
+                    }
+                }
+
+                // MTK backend uses raw prompt without formatting
+                String response;
+                try {
+                    response = mtkLifecycle.run("generate", MTKBackendLifecycle.State.GENERATING,
+                        MTKBackendLifecycle.State.READY, MTKBackendLifecycle.State.READY,
+                        AppConstants.LLM_GENERATION_TIMEOUT_MS,
+                        () -> nativeStreamingInference(plan.getInput(), AppConstants.MTK_MAX_RESPONSE_TOKENS,
+                            false, new TokenCallback() {
+                                @Override
+                                public void onToken(String token) {
+                                    Tracer.instant("llm.token");
+                                    sample.onToken();
+                                    request.deliverToken(token);
+                                }
+                            }));
+                } catch (Exception e) {
+                    mtkSessionPolicy.invalidate();
+                    throw e;
+                }
+                if (request.isActive() && response != null && request.getResponse().isEmpty()) {
+                    // Non-streaming native builds only return the full response
+                    request.deliverToken(response);
+                }
+
+                if (request.isCancelled()) {
+                    // Stopping resets the native context mid-generation
+                    mtkSessionPolicy.invalidate();
+                } else {
+                    mtkSessionPolicy.onGenerated(plan, prompt, request.getResponse());
+                }
+                sample.setPromptTokens(plan.getInputTokens());
+                return sample.getOutputTokens() >= AppConstants.MTK_MAX_RESPONSE_TOKENS
+                    ? GenerationMetrics.STOP_LENGTH : GenerationMetrics.STOP_EOS;
+
+            case AppConstants.BACKEND_CPU:
+                Log.d(TAG, "Formatted prompt for local CPU: " + prompt);
+
+                // Calculate sequence length from the exact prompt token count plus output space.
+                // The history budget in PromptManager.getMaxPromptTokens uses the same window.
+                int promptTokens = PromptManager.countTokens(context, prompt);
+                int seqLen = Math.min(
+                    AppConstants.getLLMContextWindow(context),
+                    promptTokens + AppConstants.getLLMMinOutputLength(context)
+                );
+
+                // Stop sequences may be split across tokens, so a possible partial match is
+                // held back until it either completes or is ruled out
+                StopSequenceMatcher stopMatcher = StopSequenceMatcher.forModel(ModelType.LLAMA_3_2);
+                runCpuGeneration(prompt, seqLen, new LlamaCallback() {
+                    @Override
+                    public void onResult(String token) {
+                        if (!request.isActive() || token == null || token.isEmpty()) {
+                            return;
                         }
-                        break;
-                        
-                    case AppConstants.BACKEND_CPU:
-                        // Only apply prompt formatting for local CPU backend
-                        Log.d(TAG, "Formatted prompt for local CPU: " + prompt);
-                        
-                        // Calculate sequence length with more generous output space
-                        int seqLen = Math.min(
-                            AppConstants.getLLMMaxSeqLength(context),
-                            prompt.length() + AppConstants.getLLMMinOutputLength(context)
-                        );
-                        
-                        executor.execute(() -> {
+                        sample.onToken();
+
+                        String safeText = stopMatcher.feed(token);
+                        if (!safeText.isEmpty()) {
+                            request.deliverToken(safeText);
+                        }
+
+                        if (stopMatcher.isMatched()) {
+                            Log.d(TAG, "Stop sequence detected: " + stopMatcher.getMatchedSequence());
+                            request.complete();
+                            // Explicitly stop the module when we detect a stop sequence
                             try {
-                                mModule.generate(prompt, seqLen, new LlamaCallback() {
-                                    @Override
-                                    public void onResult(String token) {
-                                        if (!isGenerating.get()) {
-                                            return;
-                                        }
-
-                                        if (token == null || token.isEmpty()) {
-                                            return;
-                                        }
-
-                                        // Handle both stop tokens - filter out both EOS tokens
-                                        if (token.equals(PromptFormat.getStopToken(ModelType.LLAMA_3_2))) {
-                                            Log.d(TAG, "Stop token detected: " + token);
-                                            String finalResponse = currentStreamingResponse.toString();
-                                            if (!currentResponse.isDone()) {
-                                                currentResponse.complete(finalResponse);
-                                                resultFuture.complete(finalResponse);
-                                            }
-                                            isGenerating.set(false);
-                                            // Explicitly stop the module when we detect a stop token
-                                            try {
-                                                mModule.stop();
-                                            } catch (Exception e) {
-                                                Log.e(TAG, "Error stopping module after stop token", e);
-                                            }
-                                            return;
-                                        }
-
-                                        // Handle streaming response
-                                        if (callback != null) {
-                                            callback.onToken(token);
-                                        }
-                                        currentStreamingResponse.append(token);
-                                    }
-
-                                    @Override
-                                    public void onStats(float tps) {
-                                        Log.d(TAG, String.format("Generation speed: %.2f tokens/sec", tps));
-                                    }
-                                }, false);
-                                
-                                // Only complete if we haven't been stopped and have a response
-                                if (!currentResponse.isDone() && currentStreamingResponse.length() > 0) {
-                                    String finalResponse = currentStreamingResponse.toString();
-                                    currentResponse.complete(finalResponse);
-                                    resultFuture.complete(finalResponse);
-                                }
-                                
+                                mModule.stop();
                             } catch (Exception e) {
-                                Log.e(TAG, "Error in CPU streaming generation", e);
-                                if (!currentResponse.isDone()) {
-                                    currentResponse.completeExceptionally(e);
-                                    resultFuture.completeExceptionally(e);
-                                }
-                            } finally {
-                                isGenerating.set(false);
+                                Log.e(TAG, "Error stopping module after stop sequence", e);
                             }
-                        });
-                        break;
-                        
-                    default:
-                        String error = "Unsupported backend: " + currentBackend;
-                        Log.e(TAG, error);
-                        resultFuture.completeExceptionally(new IllegalStateException(error));
+                        }
+                    }
+
+                    @Override
+                    public void onStats(float tps) {
+                        Log.d(TAG, String.format("Generation speed: %.2f tokens/sec", tps));
+                        sample.setReportedDecodeRate(tps);
+                    }
+                });
+
+                // Only the text that was not already in the KV cache is prefilled
+                sample.setPromptTokens((int) Math.max(0, promptTokens - lastReusedPositions));
+                if (stopMatcher.isMatched()) {
+                    return GenerationMetrics.STOP_SEQUENCE;
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error in streaming response", e);
-                resultFuture.completeExceptionally(e);
+
+                // The sequence length ran out while a partial match was held back
+                String heldText = stopMatcher.flush();
+                if (request.isActive() && !heldText.isEmpty()) {
+                    request.deliverToken(heldText);
+                }
+                int outputBudget = Math.min(AppConstants.getLLMMinOutputLength(context), seqLen - promptTokens);
+                return sample.getOutputTokens() >= outputBudget
+                    ? GenerationMetrics.STOP_LENGTH : GenerationMetrics.STOP_EOS;
+
+            default:
+                throw new IllegalStateException("Unsupported backend: " + currentBackend);
+        }
+    }
+
+    /**
+     * Streams a cached response back at roughly display speed, so it reads like a generation.
+     */
+    private void replayCachedResponse(GenerationRequest request, String response) throws InterruptedException {
+        int i = 0;
+        while (i < response.length() && request.isActive()) {
+            int end = i;
+            for (int chars = 0; chars < AppConstants.LLM_RESPONSE_CACHE_REPLAY_CHARS && end < response.length(); chars++) {
+                end += Character.charCount(response.codePointAt(end));
             }
-        });
-        
-        return resultFuture;
+            request.deliverToken(response.substring(i, end));
+            i = end;
+            if (i < response.length()) {
+                Thread.sleep(AppConstants.LLM_RESPONSE_CACHE_REPLAY_INTERVAL_MS);
+            }
+        }
+    }
+
+    /**
+     * Runs the reset and model swap a plan asks for, on the native thread, timing each.
+     */
+    private void prepareMtkContext(MTKSessionPolicy.Plan plan) {
+        if (plan.isReset()) {
+            long start = SystemClock.elapsedRealtime();
+            long trace = Tracer.begin("mtk.reset");
+            try {
+                nativeResetLlm();
+            } finally {
+                Tracer.end(trace);
+            }
+            mtkSessionPolicy.onReset(SystemClock.elapsedRealtime() - start);
+        }
+        if (plan.isSwap()) {
+            long start = SystemClock.elapsedRealtime();
+            long trace = Tracer.begin("mtk.swapModel");
+            try {
+                nativeSwapModel(AppConstants.MTK_PROMPT_TOKEN_SIZE);
+            } finally {
+                Tracer.end(trace);
+            }
+            mtkSessionPolicy.onSwapped(SystemClock.elapsedRealtime() - start);
+        }
+        Log.d(TAG, String.format("MTK context prepared: reset %s (%d ms), swap %s (%d ms), %d input tokens",
+            plan.isReset(), mtkSessionPolicy.getLastResetMs(), plan.isSwap(), mtkSessionPolicy.getLastSwapMs(),
+            plan.getInputTokens()));
     }
 
-    private void completeGeneration() {
-        if (isGenerating.compareAndSet(true, false)) {
-            String finalResponse = currentStreamingResponse.toString();
-            if (currentResponse != null && !currentResponse.isDone()) {
-                currentResponse.complete(finalResponse);
+    /**
+     * Runs a CPU generation. In session mode only the text that is not yet in the KV cache
+     * is prefilled; otherwise (or when the session cannot be used) the whole prompt is
+     * generated from position 0.
+     */
+    private void runCpuGeneration(String prompt, int fallbackSeqLen, LlamaCallback callback) {
+        long start = SystemClock.elapsedRealtime();
+        long traceStart = Tracer.now();
+        lastTimeToFirstTokenMs = -1;
+        lastReusedPositions = 0;
+        LlamaCallback timedCallback = new LlamaCallback() {
+            @Override
+            public void onResult(String result) {
+                Tracer.instant("llm.token");
+                if (lastTimeToFirstTokenMs < 0) {
+                    // Prefill of the uncached text plus the first decode step
+                    Tracer.span("llm.timeToFirstToken", traceStart, Tracer.now());
+                    lastTimeToFirstTokenMs = SystemClock.elapsedRealtime() - start;
+                    Log.d(TAG, String.format("Time to first token: %d ms (reused %d cached positions)",
+                        lastTimeToFirstTokenMs, lastReusedPositions));
+                }
+                callback.onResult(result);
+            }
+
+            @Override
+            public void onStats(float tps) {
+                callback.onStats(tps);
+            }
+        };
+
+        if (AppConstants.LLM_KV_CACHE_REUSE_ENABLED && kvCacheSession != null && kvCacheSession.isSupported()) {
+            int tailStart = kvCacheSession.findGenerationTailStart(prompt);
+            String tail = prompt.substring(tailStart);
+            int reserved = PromptManager.countTokens(this, tail) + getMinOutputLength();
+            long startPos = -1;
+            if (!tail.isEmpty()) {
+                long trace = Tracer.begin("llm.sessionPrefill");
+                try {
+                    startPos = kvCacheSession.prefill(mModule, prompt.substring(0, tailStart), reserved);
+                } finally {
+                    Tracer.end(trace);
+                }
+            }
+            if (startPos >= 0) {
+                lastReusedPositions = kvCacheSession.getLastReusedPositions();
+                int seqLen = (int) Math.min(kvCacheSession.getContextWindow(), startPos + reserved);
+                int result = mModule.generateFromPos(tail, seqLen, startPos, timedCallback, false);
+                if (result != 0) {
+                    Log.w(TAG, "Session generation failed with error code: " + result);
+                    kvCacheSession.reset();
+                }
+                return;
             }
-            // Clean up resources
-            currentCallback = null;
-            System.gc(); // Request garbage collection for any lingering resources
         }
+
+        // A full generate overwrites the cache from position 0
+        if (kvCacheSession != null) {
+            kvCacheSession.invalidate();
+        }
+        mModule.generate(prompt, fallbackSeqLen, timedCallback, false);
     }
 
-    public void stopGeneration() {
-        isGenerating.set(false);
-        
+    /**
+     * Interrupts the backend for a running request. Called by the scheduler on cancellation.
+     */
+    private void stopBackend(GenerationRequest request) {
         if (currentBackend.equals(AppConstants.BACKEND_MTK)) {
+            // Called off the native thread on purpose: it interrupts the inference running there
             try {
                 nativeResetLlm();
             } catch (Exception e) {
                 Log.e(TAG, "Error stopping MTK generation", e);
             }
-        } else if (mModule != null) {
+        } else {
+            LlamaModule module = mModule;
+            if (module == null) {
+                return;
+            }
             try {
-                mModule.stop();
+                module.stop();
             } catch (Exception e) {
                 Log.e(TAG, "Error stopping CPU generation", e);
             }
         }
+    }
 
-        if (currentResponse != null && !currentResponse.isDone()) {
-            String finalResponse = currentStreamingResponse.toString();
-            if (finalResponse.isEmpty()) {
-                finalResponse = "[Generation stopped by user]";
-            }
-            currentResponse.complete(finalResponse);
+    /**
+     * Stops the generation that is currently running. Queued requests are left untouched.
+     */
+    public void stopGeneration() {
+        if (scheduler != null) {
+            scheduler.cancelCurrent();
         }
-        
-        // Clean up resources
-        currentCallback = null;
-        System.gc();
+    }
+
+    /**
+     * Cancels a queued or running generation by its request id.
+     */
+    public boolean cancelGeneration(long requestId) {
+        return scheduler != null && scheduler.cancel(requestId);
+    }
+
+    public int getGenerationQueueDepth() {
+        return scheduler != null ? scheduler.getQueueDepth() : 0;
+    }
+
+    public long getLastGenerationWaitTimeMs() {
+        return scheduler != null ? scheduler.getLastWaitTimeMs() : 0;
+    }
+
+    public long getMaxGenerationWaitTimeMs() {
+        return scheduler != null ? scheduler.getMaxWaitTimeMs() : 0;
+    }
+
+    public long getAverageGenerationWaitTimeMs() {
+        return scheduler != null ? scheduler.getAverageWaitTimeMs() : 0;
     }
 
     public void releaseResources() {
@@ -708,37 +1148,12 @@ public class LLMEngineService extends BaseEngineService {
             
             isCleaningUp = true;
             try {
-                stopGeneration();
-                
-                // Release MTK resources if using MTK backend
-                if (currentBackend.equals(AppConstants.BACKEND_MTK)) {
-                    try {
-                        // Add delay before cleanup
-                        Thread.sleep(AppConstants.BACKEND_CLEANUP_DELAY_MS);
-                        nativeResetLlm();
-                        Thread.sleep(AppConstants.BACKEND_CLEANUP_DELAY_MS);
-                        nativeReleaseLlm();
-                        mtkInitCount = 0; // Reset init count
-                        Log.d(TAG, "Released MTK resources");
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error releasing MTK resources", e);
-                        cleanupAfterError();
-                    }
-                }
-                
-                // Release CPU resources if using CPU backend
-                if (mModule != null) {
-                    try {
-                        mModule.resetNative();
-                        mModule = null;
-                        Log.d(TAG, "Released CPU resources");
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error releasing CPU resources", e);
-                    }
+                if (scheduler != null) {
+                    scheduler.cancelAll();
                 }
+                releaseBackend();
                 
                 // Reset state
-                currentBackend = AppConstants.BACKEND_NONE;
                 isInitialized = false;
                 System.gc(); // Request garbage collection
                 
@@ -751,9 +1166,74 @@ public class LLMEngineService extends BaseEngineService {
         }
     }
 
+    /**
+     * Unloads the current backend and every resident CPU model, leaving queued requests and
+     * the initialized state alone. Used directly while calibrating on the worker thread.
+     */
+    private void releaseBackend() {
+        synchronized (MTK_LOCK) {
+            // Release MTK resources if using MTK backend
+            if (currentBackend.equals(AppConstants.BACKEND_MTK)) {
+                releaseNativeLlm(this);
+                Log.d(TAG, "Released MTK resources");
+            }
+
+            // Release every resident CPU model, including the active one
+            if (residencyManager != null) {
+                try {
+                    residencyManager.releaseAll();
+                    Log.d(TAG, "Released CPU resources");
+                } catch (Exception e) {
+                    Log.e(TAG, "Error releasing CPU resources", e);
+                }
+            }
+            mModule = null;
+            kvCacheSession = null;
+            currentBackend = AppConstants.BACKEND_NONE;
+        }
+    }
+
+    /**
+     * Under pressure the response cache drops its memory tier first, then idle resident
+     * models are evicted, and at the last tier the active model is unloaded unless a
+     * generation or batch is running. Other engines release at lower tiers, so they go first.
+     * Unloading can wait on native cleanup, so it runs on the cleanup thread rather than
+     * the main thread.
+     */
+    @Override
+    protected List<String> releaseForMemoryPressure(int tier) {
+        List<String> released = new ArrayList<>();
+        if (responseCache != null) {
+            responseCache.trimMemory();
+        }
+        if (tier >= TRIM_TIER_IDLE && residencyManager != null) {
+            int evicted = residencyManager.evictIdle(ModelResidencyManager.EVICT_REASON_TRIM);
+            if (evicted > 0) {
+                released.add(evicted + " idle models");
+            }
+        }
+        if (tier >= TRIM_TIER_ALL && canReleaseForMemoryPressure()) {
+            String releasedModel = getModelName();
+            cleanupExecutor.execute(() -> {
+                // A generation or batch may have started since the check on the main thread
+                if (canReleaseForMemoryPressure()) {
+                    releaseResources();
+                }
+            });
+            released.add("LLM " + releasedModel);
+        }
+        return released;
+    }
+
+    private boolean canReleaseForMemoryPressure() {
+        // A batch is idle between items, so the scheduler alone does not tell
+        return isInitialized && !isBatchRunning() && (scheduler == null || !scheduler.isBusy());
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
+        cancelBatch();
         
         // Run cleanup with timeout
         Future<?> cleanupFuture = cleanupExecutor.submit(() -> {
@@ -774,9 +1254,9 @@ public class LLMEngineService extends BaseEngineService {
             Log.e(TAG, "Error waiting for cleanup", e);
         }
         
-        if (executor != null) {
-            executor.shutdown();
-            executor = null;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
         }
     }
 
@@ -788,6 +1268,63 @@ public class LLMEngineService extends BaseEngineService {
         return preferredBackend;
     }
 
+    /**
+     * Returns the per-backend generation metrics (TTFT, prefill/decode rates, output length
+     * and stop reasons) recorded since the service started.
+     */
+    public GenerationMetrics getGenerationMetrics() {
+        return metrics;
+    }
+
+    public long getLastTimeToFirstTokenMs() {
+        return lastTimeToFirstTokenMs;
+    }
+
+    public long getLastReusedPositions() {
+        return lastReusedPositions;
+    }
+
+    public long getSystemPrefixPositions() {
+        return systemPrefixPositions;
+    }
+
+    public long getSystemPrefixPrefillMs() {
+        return systemPrefixPrefillMs;
+    }
+
+    /**
+     * Returns the last duration of each MTK lifecycle transition, keyed as "FROM->TO".
+     */
+    public Map<String, Long> getMTKTransitionTimings() {
+        return mtkLifecycle.getTransitionTimings();
+    }
+
+    public MTKBackendLifecycle.State getMTKState() {
+        return mtkLifecycle.getState();
+    }
+
+    /**
+     * Returns the reset/swap bookkeeping of the MTK backend, or null if it is not initialized.
+     */
+    public MTKSessionPolicy getMTKSessionPolicy() {
+        return mtkSessionPolicy;
+    }
+
+    /**
+     * Returns the backend calibration profile in use, or null if none was applied.
+     */
+    public BackendProfile getBackendProfile() {
+        return backendProfile;
+    }
+
+    public long getResponseCacheHitCount() {
+        return responseCache != null ? responseCache.getHitCount() : 0;
+    }
+
+    public long getResponseCacheMissCount() {
+        return responseCache != null ? responseCache.getMissCount() : 0;
+    }
+
     // Native methods for MTK backend
     private native boolean nativeInitLlm(String yamlConfigPath, boolean preloadSharedWeights);
     private native String nativeInference(String inputString, int maxResponse, boolean parsePromptTokens);
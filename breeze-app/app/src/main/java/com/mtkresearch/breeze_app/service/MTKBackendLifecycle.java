@@ -0,0 +1,150 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * State machine for the native MTK LLM, which is process-wide.
+ *
+ * Every native operation runs on one dedicated thread and moves the machine through an
+ * explicit state: it enters a transitional state (loading, generating, resetting) when it
+ * starts and a settled state when it completes, fails or times out. Callers wait on the
+ * transition instead of sleeping, and the duration of each transition is recorded.
+ */
+public class MTKBackendLifecycle {
+    private static final String TAG = "MTKBackendLifecycle";
+
+    public enum State {
+        UNLOADED,
+        LOADING,
+        READY,
+        GENERATING,
+        RESETTING,
+        RELEASED
+    }
+
+    public interface NativeCall<T> {
+        T call() throws Exception;
+    }
+
+    public interface Listener {
+        void onStateChanged(State from, State to, long durationMs);
+    }
+
+    private static final Map<State, Set<State>> TRANSITIONS = new EnumMap<>(State.class);
+    static {
+        TRANSITIONS.put(State.UNLOADED, EnumSet.of(State.LOADING, State.RESETTING));
+        TRANSITIONS.put(State.LOADING, EnumSet.of(State.READY, State.UNLOADED));
+        TRANSITIONS.put(State.READY, EnumSet.of(State.GENERATING, State.RESETTING));
+        TRANSITIONS.put(State.GENERATING, EnumSet.of(State.READY, State.RESETTING));
+        TRANSITIONS.put(State.RESETTING, EnumSet.of(State.READY, State.UNLOADED, State.RELEASED));
+        TRANSITIONS.put(State.RELEASED, EnumSet.of(State.LOADING, State.RESETTING));
+    }
+
+    private final ExecutorService nativeExecutor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "mtk-native"));
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> lastTransitionMs = new HashMap<>();
+    private State state = State.UNLOADED;
+    private long stateEnteredAt = SystemClock.elapsedRealtime();
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns true while native LLM resources may be held.
+     */
+    public synchronized boolean isLoaded() {
+        return state != State.UNLOADED && state != State.RELEASED;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns how long the last {@code from -> to} transition took, or -1 if it never happened.
+     */
+    public synchronized long getLastTransitionMs(State from, State to) {
+        Long duration = lastTransitionMs.get(from + "->" + to);
+        return duration != null ? duration : -1;
+    }
+
+    public synchronized Map<String, Long> getTransitionTimings() {
+        return new HashMap<>(lastTransitionMs);
+    }
+
+    /**
+     * Runs a native operation on the native thread. The machine enters {@code during} when
+     * the operation starts, then {@code onSuccess} when it returns, or {@code onFailure} when
+     * it throws or exceeds {@code timeoutMs}. A timed-out native call cannot be interrupted,
+     * so later operations queue behind it and time out as well until it returns.
+     *
+     * @throws IllegalStateException if the operation is not allowed in the current state
+     */
+    public <T> T run(String name, State during, State onSuccess, State onFailure,
+                     long timeoutMs, NativeCall<T> call) throws Exception {
+        moveTo(during);
+        Future<T> future = nativeExecutor.submit(call::call);
+        try {
+            T result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            moveTo(onSuccess);
+            return result;
+        } catch (TimeoutException e) {
+            Log.w(TAG, name + " timed out after " + timeoutMs + " ms");
+            future.cancel(true);
+            moveTo(onFailure);
+            throw e;
+        } catch (ExecutionException e) {
+            moveTo(onFailure);
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } catch (InterruptedException e) {
+            moveTo(onFailure);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private void moveTo(State next) {
+        State previous;
+        long durationMs;
+        synchronized (this) {
+            if (next == state) {
+                return;
+            }
+            if (!TRANSITIONS.get(state).contains(next)) {
+                throw new IllegalStateException("Invalid MTK transition " + state + " -> " + next);
+            }
+            long now = SystemClock.elapsedRealtime();
+            previous = state;
+            durationMs = now - stateEnteredAt;
+            lastTransitionMs.put(previous + "->" + next, durationMs);
+            state = next;
+            stateEnteredAt = now;
+        }
+        Log.d(TAG, String.format("%s -> %s after %d ms", previous, next, durationMs));
+        for (Listener listener : listeners) {
+            listener.onStateChanged(previous, next, durationMs);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.mtkresearch.breeze_app.service;
+
+import com.mtkresearch.breeze_app.utils.TokenCounter;
+
+/**
+ * Decides what the MTK backend has to do before a generation, instead of resetting and
+ * swapping unconditionally after every one.
+ *
+ * The native context keeps the previous prompt and response. When the next prompt extends
+ * that text and still fits the context, only the new suffix is sent; otherwise the context is
+ * reset first. After a generation the runtime is left on the single-token decode model, and
+ * it is swapped back to the prompt model only when the text to prefill is long enough.
+ */
+public class MTKSessionPolicy {
+
+    /**
+     * Work to do before a generation, and the text to send to the native inference.
+     */
+    public static class Plan {
+        private final boolean reset;
+        private final boolean swap;
+        private final String input;
+        private final int inputTokens;
+
+        Plan(boolean reset, boolean swap, String input, int inputTokens) {
+            this.reset = reset;
+            this.swap = swap;
+            this.input = input;
+            this.inputTokens = inputTokens;
+        }
+
+        public boolean isReset() {
+            return reset;
+        }
+
+        public boolean isSwap() {
+            return swap;
+        }
+
+        public boolean needsPreparation() {
+            return reset || swap;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public int getInputTokens() {
+            return inputTokens;
+        }
+    }
+
+    private final TokenCounter tokenCounter;
+    private final int contextTokens;
+    private final int promptTokenSize;
+    private final int swapMinPromptTokens;
+    private final int maxResponseTokens;
+
+    private String contextText = null;  // Text the native context holds, null if unknown
+    private boolean dirty = false;      // True when the native context may hold anything
+    private int usedTokens = 0;
+    private int currentTokenSize;
+
+    private long resetCount = 0;
+    private long swapCount = 0;
+    private long reuseCount = 0;
+    private long lastResetMs = 0;
+    private long lastSwapMs = 0;
+    private long totalResetMs = 0;
+    private long totalSwapMs = 0;
+
+    public MTKSessionPolicy(TokenCounter tokenCounter, int contextTokens, int promptTokenSize,
+                            int swapMinPromptTokens, int maxResponseTokens) {
+        this.tokenCounter = tokenCounter;
+        this.contextTokens = contextTokens;
+        this.promptTokenSize = promptTokenSize;
+        this.swapMinPromptTokens = swapMinPromptTokens;
+        this.maxResponseTokens = maxResponseTokens;
+        // A freshly initialized runtime starts on the prompt model
+        this.currentTokenSize = promptTokenSize;
+    }
+
+    public synchronized Plan plan(String prompt) {
+        boolean extendsContext = contextText != null && prompt.startsWith(contextText);
+        if (extendsContext) {
+            String suffix = prompt.substring(contextText.length());
+            int suffixTokens = tokenCounter.countTokens(suffix);
+            if (usedTokens + suffixTokens + maxResponseTokens <= contextTokens) {
+                return new Plan(false, needsSwap(suffixTokens), suffix, suffixTokens);
+            }
+        }
+
+        int promptTokens = tokenCounter.countTokens(prompt);
+        return new Plan(dirty, needsSwap(promptTokens), prompt, promptTokens);
+    }
+
+    private boolean needsSwap(int inputTokens) {
+        return currentTokenSize != promptTokenSize && inputTokens >= swapMinPromptTokens;
+    }
+
+    public synchronized void onReset(long durationMs) {
+        contextText = null;
+        dirty = false;
+        usedTokens = 0;
+        resetCount++;
+        lastResetMs = durationMs;
+        totalResetMs += durationMs;
+    }
+
+    public synchronized void onSwapped(long durationMs) {
+        currentTokenSize = promptTokenSize;
+        swapCount++;
+        lastSwapMs = durationMs;
+        totalSwapMs += durationMs;
+    }
+
+    /**
+     * Records a completed generation. The runtime is now on the decode model and its context
+     * holds the full prompt followed by the response.
+     */
+    public synchronized void onGenerated(Plan plan, String prompt, String response) {
+        if (!plan.isReset() && contextText != null && prompt.startsWith(contextText)) {
+            reuseCount++;
+        }
+        contextText = prompt + response;
+        dirty = true;
+        usedTokens += plan.getInputTokens() + tokenCounter.countTokens(response);
+        currentTokenSize = 1;
+    }
+
+    /**
+     * Forgets the context after a cancelled or failed generation, so the next one resets.
+     */
+    public synchronized void invalidate() {
+        contextText = null;
+        dirty = true;
+        currentTokenSize = 1;
+    }
+
+    public synchronized long getResetCount() {
+        return resetCount;
+    }
+
+    public synchronized long getSwapCount() {
+        return swapCount;
+    }
+
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    public synchronized long getLastResetMs() {
+        return lastResetMs;
+    }
+
+    public synchronized long getLastSwapMs() {
+        return lastSwapMs;
+    }
+
+    public synchronized long getTotalResetMs() {
+        return totalResetMs;
+    }
+
+    public synchronized long getTotalSwapMs() {
+        return totalSwapMs;
+    }
+}
@@ -0,0 +1,259 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.pytorch.executorch.LlamaModule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps loaded {@link LlamaModule}s resident so that switching back to a model is instant.
+ *
+ * Before a model is loaded, least-recently-used idle models are evicted until the model's
+ * estimated footprint fits in the memory reported by {@link ActivityManager.MemoryInfo}
+ * (minus the low-memory threshold and a headroom). If that is not enough, the active model
+ * is released too rather than overcommitting memory, so callers must not use it while
+ * acquiring another one. Otherwise it is only evicted once its replacement has loaded.
+ * Loading runs outside the lock, so queries from the UI thread never wait for it.
+ */
+public class ModelResidencyManager {
+    private static final String TAG = "ModelResidencyManager";
+
+    public static final String EVICT_REASON_MEMORY = "memory";
+    public static final String EVICT_REASON_TRIM = "trim";
+    public static final String EVICT_REASON_RELEASE = "release";
+
+    public interface Loader {
+        LlamaModule load(String modelPath) throws Exception;
+    }
+
+    public interface Listener {
+        void onModelLoaded(String modelPath, long loadTimeMs);
+        void onModelEvicted(String modelPath, String reason);
+    }
+
+    /**
+     * A resident model with its own KV cache session, since the cache lives in the module.
+     */
+    public static class ResidentModel {
+        private final String modelPath;
+        private final LlamaModule module;
+        private final long estimatedBytes;
+        private KVCacheSession session;
+
+        ResidentModel(String modelPath, LlamaModule module, long estimatedBytes) {
+            this.modelPath = modelPath;
+            this.module = module;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        public String getModelPath() {
+            return modelPath;
+        }
+
+        public LlamaModule getModule() {
+            return module;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        public KVCacheSession getSession() {
+            return session;
+        }
+
+        public void setSession(KVCacheSession session) {
+            this.session = session;
+        }
+    }
+
+    private final ActivityManager activityManager;
+    private final long headroomBytes;
+    private final int maxResidentModels;
+    private final Map<String, ResidentModel> residents = new LinkedHashMap<>(4, 0.75f, true);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private String activeModelPath;
+    // Bumped by releaseAll, so a load that finishes after it is discarded
+    private int releaseCount = 0;
+
+    public ModelResidencyManager(Context context, long headroomBytes, int maxResidentModels) {
+        this.activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.headroomBytes = headroomBytes;
+        this.maxResidentModels = Math.max(1, maxResidentModels);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Makes a model the active one, loading it if it is not resident yet.
+     *
+     * @return the resident model, or null if loading failed
+     */
+    public ResidentModel acquire(String modelPath, Loader loader) {
+        long estimatedBytes;
+        int releasesBeforeLoad;
+        synchronized (this) {
+            ResidentModel resident = residents.get(modelPath);
+            if (resident != null) {
+                activeModelPath = modelPath;
+                Log.d(TAG, "Model already resident: " + modelPath);
+                return resident;
+            }
+            estimatedBytes = estimateFootprint(modelPath);
+            if (!evictIdleUntil(estimatedBytes, maxResidentModels - 1, EVICT_REASON_MEMORY)
+                    && activeModelPath != null) {
+                Log.w(TAG, "Releasing active model " + activeModelPath + " to make room for " + modelPath);
+                release(residents.remove(activeModelPath), EVICT_REASON_MEMORY);
+            }
+            releasesBeforeLoad = releaseCount;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        LlamaModule module;
+        try {
+            module = loader.load(modelPath);
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading model " + modelPath, e);
+            return null;
+        }
+        if (module == null) {
+            return null;
+        }
+        long loadTimeMs = SystemClock.elapsedRealtime() - start;
+
+        ResidentModel resident = new ResidentModel(modelPath, module, estimatedBytes);
+        synchronized (this) {
+            if (releaseCount != releasesBeforeLoad) {
+                Log.d(TAG, "Discarding " + modelPath + ", released while loading");
+                module.resetNative();
+                return null;
+            }
+            residents.put(modelPath, resident);
+            activeModelPath = modelPath;
+            // The model it replaced is idle now and goes first if over the limit
+            evictIdleUntil(0, maxResidentModels, EVICT_REASON_MEMORY);
+            Log.d(TAG, String.format("Loaded %s in %d ms (%d resident)", modelPath, loadTimeMs, residents.size()));
+        }
+        for (Listener listener : listeners) {
+            listener.onModelLoaded(modelPath, loadTimeMs);
+        }
+        return resident;
+    }
+
+    public synchronized boolean isResident(String modelPath) {
+        return residents.containsKey(modelPath);
+    }
+
+    public synchronized List<String> getResidentModelPaths() {
+        return new ArrayList<>(residents.keySet());
+    }
+
+    public synchronized long getResidentBytes() {
+        long total = 0;
+        for (ResidentModel resident : residents.values()) {
+            total += resident.getEstimatedBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Evicts every model except the active one.
+     *
+     * @return the number of models evicted
+     */
+    public synchronized int evictIdle(String reason) {
+        int evicted = 0;
+        Iterator<Map.Entry<String, ResidentModel>> it = residents.entrySet().iterator();
+        while (it.hasNext()) {
+            ResidentModel resident = it.next().getValue();
+            if (!resident.getModelPath().equals(activeModelPath)) {
+                it.remove();
+                release(resident, reason);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Releases every resident model, including the active one.
+     */
+    public synchronized void releaseAll() {
+        for (ResidentModel resident : new ArrayList<>(residents.values())) {
+            release(resident, EVICT_REASON_RELEASE);
+        }
+        residents.clear();
+        activeModelPath = null;
+        releaseCount++;
+    }
+
+    /**
+     * Evicts least-recently-used idle models until {@code requiredBytes} fit in the
+     * available memory and at most {@code maxResidents} models are resident. The active
+     * model is never evicted here.
+     *
+     * @return false if {@code requiredBytes} still do not fit
+     */
+    private boolean evictIdleUntil(long requiredBytes, int maxResidents, String reason) {
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        // Freed memory does not show up in MemoryInfo right away, so count it ourselves
+        long available = memoryInfo.availMem - memoryInfo.threshold - headroomBytes;
+
+        Iterator<Map.Entry<String, ResidentModel>> it = residents.entrySet().iterator();
+        while (it.hasNext() && (available < requiredBytes || residents.size() > maxResidents)) {
+            ResidentModel lru = it.next().getValue();
+            if (lru.getModelPath().equals(activeModelPath)) {
+                continue;
+            }
+            it.remove();
+            release(lru, reason);
+            available += lru.getEstimatedBytes();
+        }
+
+        if (available < requiredBytes) {
+            Log.w(TAG, String.format("%d MB needed with only %d MB available after evicting idle models",
+                requiredBytes / (1024 * 1024), Math.max(available, 0) / (1024 * 1024)));
+            return false;
+        }
+        return true;
+    }
+
+    private void release(ResidentModel resident, String reason) {
+        if (resident.getModelPath().equals(activeModelPath)) {
+            activeModelPath = null;
+        }
+        try {
+            resident.getModule().resetNative();
+        } catch (Exception e) {
+            Log.e(TAG, "Error releasing model " + resident.getModelPath(), e);
+        }
+        Log.d(TAG, "Evicted " + resident.getModelPath() + " (" + reason + ")");
+        for (Listener listener : listeners) {
+            listener.onModelEvicted(resident.getModelPath(), reason);
+        }
+    }
+
+    /**
+     * The weights dominate the footprint, so the model file size is a close estimate.
+     */
+    private static long estimateFootprint(String modelPath) {
+        return new File(modelPath).length();
+    }
+}
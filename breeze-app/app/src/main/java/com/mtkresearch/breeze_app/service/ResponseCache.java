@@ -0,0 +1,191 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-tier LRU cache of complete responses for deterministic (temperature 0) generations.
+ *
+ * The memory tier holds the most recent entries; every entry is also written to a file
+ * under the app files dir, where the least recently used files are evicted once the
+ * entry or byte limit is exceeded. File modification times track disk recency.
+ */
+public class ResponseCache {
+    private static final String TAG = "ResponseCache";
+    private static final String CACHE_DIR = "response_cache";
+    private static final String FILE_SUFFIX = ".txt";
+
+    private final File directory;
+    private final int maxDiskEntries;
+    private final long maxDiskBytes;
+    private final Map<String, String> memory;
+    private long hits = 0;
+    private long misses = 0;
+
+    public ResponseCache(Context context, int maxMemoryEntries, int maxDiskEntries, long maxDiskBytes) {
+        this.directory = new File(context.getFilesDir(), CACHE_DIR);
+        this.maxDiskEntries = maxDiskEntries;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * Sampling makes responses non-deterministic, so caching only applies at temperature 0.
+     */
+    public static boolean isApplicable(float temperature) {
+        return temperature <= 0f;
+    }
+
+    /**
+     * Builds the cache key for a formatted prompt on a given model, temperature and backend.
+     * Only leading and trailing whitespace is ignored; line breaks inside the prompt matter
+     * for code and lists.
+     */
+    public static String buildKey(String prompt, String modelPath, float temperature, String backend) {
+        String normalized = prompt.trim();
+        File modelFile = modelPath != null ? new File(modelPath) : null;
+        String model = modelFile != null ? modelFile.getName() + ":" + modelFile.length() : "none";
+        return sha256(normalized + "\u0000" + model + "\u0000" + temperature + "\u0000" + backend);
+    }
+
+    public synchronized String get(String key) {
+        String response = memory.get(key);
+        if (response == null) {
+            response = readFromDisk(key);
+            if (response != null) {
+                memory.put(key, response);
+            }
+        }
+        if (response != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return response;
+    }
+
+    public synchronized void put(String key, String response) {
+        if (response == null || response.isEmpty()) {
+            return;
+        }
+        memory.put(key, response);
+        writeToDisk(key, response);
+        trimDisk();
+    }
+
+    /**
+     * Drops the memory tier. Entries stay on disk and are promoted again when read.
+     */
+    public synchronized void trimMemory() {
+        memory.clear();
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private String readFromDisk(String key) {
+        File file = new File(directory, key + FILE_SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String response = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            file.setLastModified(System.currentTimeMillis());
+            return response;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading cached response, deleting " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, String response) {
+        File file = new File(directory, key + FILE_SUFFIX);
+        File tmpFile = new File(directory, key + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(response.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing cached response", e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            Log.w(TAG, "Error committing cached response " + file.getName());
+            tmpFile.delete();
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (files.length <= maxDiskEntries && totalBytes <= maxDiskBytes) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        int remaining = files.length;
+        for (File file : files) {
+            if (remaining <= maxDiskEntries && totalBytes <= maxDiskBytes) {
+                break;
+            }
+            totalBytes -= file.length();
+            remaining--;
+            file.delete();
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.mtkresearch.breeze_app.service;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-tier LRU cache of synthesized speech, so replaying a message or a common phrase does
+ * not run the TTS model again.
+ *
+ * Audio is kept as 16-bit PCM, half the size of the float samples the model produces. The
+ * memory tier is bounded by bytes; every entry is also written to a file under the app cache
+ * dir, where the least recently used files are evicted once the byte limit is exceeded.
+ * File modification times track disk recency.
+ */
+public class TTSAudioCache {
+    private static final String TAG = "TTSAudioCache";
+    private static final String CACHE_DIR = "tts_cache";
+    private static final String FILE_SUFFIX = ".pcm";
+    private static final int FILE_MAGIC = 0x42545453;  // "BTTS"
+    private static final int FILE_VERSION = 1;
+
+    public static class Audio {
+        public final int sampleRate;
+        public final short[] pcm;
+
+        public Audio(int sampleRate, short[] pcm) {
+            this.sampleRate = sampleRate;
+            this.pcm = pcm;
+        }
+
+        long getBytes() {
+            return pcm.length * 2L;
+        }
+    }
+
+    /**
+     * Collects the float chunks of one synthesis as 16-bit PCM.
+     */
+    public static class Recorder {
+        private short[] pcm = new short[16384];
+        private int length = 0;
+
+        public void append(float[] samples) {
+            if (length + samples.length > pcm.length) {
+                pcm = Arrays.copyOf(pcm, Math.max(pcm.length * 2, length + samples.length));
+            }
+            for (float sample : samples) {
+                pcm[length++] = (short) (Math.max(-1.0f, Math.min(1.0f, sample)) * Short.MAX_VALUE);
+            }
+        }
+
+        public Audio toAudio(int sampleRate) {
+            return new Audio(sampleRate, Arrays.copyOf(pcm, length));
+        }
+    }
+
+    private final File directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, Audio> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long bytesSaved = 0;
+
+    public TTSAudioCache(Context context, long maxMemoryBytes, long maxDiskBytes) {
+        this.directory = new File(context.getCacheDir(), CACHE_DIR);
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * Builds the cache key for a text spoken by a given model, speaker and speed. Whitespace
+     * runs are collapsed so that formatting-only differences share an entry.
+     */
+    public static String buildKey(String text, int speakerId, float speed, String modelFingerprint) {
+        String normalized = text.trim().replaceAll("\\s+", " ");
+        return sha256(normalized + "\u0000" + speakerId + "\u0000" + speed + "\u0000" + modelFingerprint);
+    }
+
+    public synchronized Audio get(String key) {
+        Audio audio = memory.get(key);
+        if (audio == null) {
+            audio = readFromDisk(key);
+            if (audio != null) {
+                putInMemory(key, audio);
+            }
+        }
+        if (audio != null) {
+            hits++;
+            bytesSaved += audio.getBytes();
+        } else {
+            misses++;
+        }
+        return audio;
+    }
+
+    public synchronized void put(String key, Audio audio) {
+        if (audio.pcm.length == 0 || audio.getBytes() > maxDiskBytes) {
+            return;
+        }
+        putInMemory(key, audio);
+        writeToDisk(key, audio);
+        trimDisk();
+    }
+
+    /**
+     * Drops the memory tier. Entries stay on disk and are promoted again when read.
+     */
+    public synchronized void trimMemory() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * PCM bytes served from the cache instead of being synthesized again.
+     */
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    private void putInMemory(String key, Audio audio) {
+        Audio previous = memory.put(key, audio);
+        if (previous != null) {
+            memoryBytes -= previous.getBytes();
+        }
+        memoryBytes += audio.getBytes();
+        Iterator<Map.Entry<String, Audio>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().getValue().getBytes();
+            eldest.remove();
+        }
+    }
+
+    private Audio readFromDisk(String key) {
+        File file = new File(directory, key + FILE_SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unknown cache file format");
+            }
+            int sampleRate = in.readInt();
+            short[] pcm = new short[in.readInt()];
+            for (int i = 0; i < pcm.length; i++) {
+                pcm[i] = in.readShort();
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return new Audio(sampleRate, pcm);
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading cached audio, deleting " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Audio audio) {
+        File file = new File(directory, key + FILE_SUFFIX);
+        File tmpFile = new File(directory, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(audio.sampleRate);
+            out.writeInt(audio.pcm.length);
+            for (short sample : audio.pcm) {
+                out.writeShort(sample);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing cached audio", e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            Log.w(TAG, "Error committing cached audio " + file.getName());
+            tmpFile.delete();
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= maxDiskBytes) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (totalBytes <= maxDiskBytes) {
+                break;
+            }
+            totalBytes -= file.length();
+            file.delete();
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,31 +1,41 @@
 package com.mtkresearch.breeze_app.service;
 
 import android.content.Intent;
-import android.media.AudioAttributes;
-import android.media.AudioFormat;
-import android.media.AudioTrack;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
 import android.util.Log;
 
 import android.speech.tts.UtteranceProgressListener;
 
 import com.k2fsa.sherpa.onnx.SherpaTTS;
+import com.mtkresearch.breeze_app.utils.AppConstants;
+import com.mtkresearch.breeze_app.utils.Histogram;
+import com.mtkresearch.breeze_app.utils.ModelFingerprint;
+import com.mtkresearch.breeze_app.utils.SelfTestCache;
+import com.mtkresearch.breeze_app.utils.SentenceSegmenter;
+import com.mtkresearch.breeze_app.utils.Tracer;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
-import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
-import kotlin.Unit;
-import kotlin.jvm.functions.Function0;
 import kotlin.jvm.functions.Function1;
 
 
@@ -33,13 +43,31 @@ public class TTSEngineService extends BaseEngineService {
     private static final String TAG = "TTSEngineService";
     private static final long INIT_TIMEOUT_MS = 20000; // 20 seconds timeout
     private static final String TEST_TEXT = "Hello, this is a test.";
+    private static final String SELF_TEST_ENGINE = "tts";
     
     // TTS components
     private TextToSpeech textToSpeech;
     private SherpaTTS localTTS;
     private String backend = "none";
     private boolean isTextToSpeechInitialized = false;
-    private AudioTrack audioTrack;
+    private AudioOutputEngine audioOutput;
+
+    // speak() synthesizes on its own thread, one utterance after another, so the next one is
+    // synthesized while the previous one plays and follows it without a gap
+    private final ExecutorService speakExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "tts-speak"));
+    private final Set<AudioPlaybackPipeline> playbacks = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger speakGeneration = new AtomicInteger();
+    private final Map<String, CompletableFuture<Void>> utteranceFutures = new ConcurrentHashMap<>();
+
+    // Synthesized speech, keyed by text and model so a model update invalidates it
+    private TTSAudioCache audioCache;
+    private String modelFingerprint;
+
+    // Streaming speech of a response that is still being generated
+    private static final String STREAM_UTTERANCE_PREFIX = "TTS_STREAM_";
+    private volatile SpeechStream activeStream;
+    private final Histogram timeToFirstAudioMs = new Histogram(1);
+    private volatile long lastTimeToFirstAudioMs = -1;
 
     public class LocalBinder extends BaseEngineService.LocalBinder<TTSEngineService> { }
 
@@ -81,7 +109,7 @@ public class TTSEngineService extends BaseEngineService {
                 if (success) {
                     Log.d(TAG, "✅ " + backendName + " TTS initialized");
                     backend = backendName.toLowerCase();
-                    return testTTSEngine();
+                    return runSelfTest();
                 }
                 Log.d(TAG, "❌ " + backendName + " TTS failed");
                 return CompletableFuture.completedFuture(false);
@@ -97,6 +125,20 @@ public class TTSEngineService extends BaseEngineService {
         try {
             Log.d(TAG, "Initializing Local TTS...");
             localTTS = SherpaTTS.Companion.getInstance(getApplicationContext());
+            if (audioOutput == null) {
+                audioOutput = new AudioOutputEngine(AppConstants.TTS_PLAYBACK_BUFFERS,
+                    AppConstants.TTS_PLAYBACK_BUFFER_SAMPLES, AppConstants.TTS_PLAYBACK_GAIN,
+                    AppConstants.TTS_AUDIO_IDLE_PAUSE_MS, AppConstants.TTS_PLAYBACK_COMPLETION_SLACK_MS);
+            }
+            // Create the track now instead of on the first utterance
+            audioOutput.prewarm(localTTS.getSampleRate());
+            if (audioCache == null && AppConstants.TTS_AUDIO_CACHE_ENABLED) {
+                // Bundled models have no file to hash, so the app version stands in for them
+                modelFingerprint = ModelFingerprint.of(AppConstants.getTTSModelPath(this))
+                    + "|" + ModelFingerprint.getAppVersion(this);
+                audioCache = new TTSAudioCache(this, AppConstants.TTS_AUDIO_CACHE_MEMORY_BYTES,
+                    AppConstants.TTS_AUDIO_CACHE_DISK_BYTES);
+            }
             future.complete(true);
             Log.d(TAG, "Local TTS initialized with " + localTTS.getNumSpeakers() + " speakers");
         } catch (Exception e) {
@@ -180,6 +222,23 @@ public class TTSEngineService extends BaseEngineService {
         return future;
     }
 
+    /**
+     * Runs the self-test unless it already passed for this model, backend and app version.
+     */
+    private CompletableFuture<Boolean> runSelfTest() {
+        String key = SelfTestCache.buildKey(this, AppConstants.getTTSModelPath(this), backend);
+        if (SelfTestCache.hasPassed(this, SELF_TEST_ENGINE, key)) {
+            Log.d(TAG, "Skipping TTS test, it passed before for this model and app version");
+            return CompletableFuture.completedFuture(true);
+        }
+        return testTTSEngine().thenApply(passed -> {
+            if (passed) {
+                SelfTestCache.recordPassed(this, SELF_TEST_ENGINE, key);
+            }
+            return passed;
+        });
+    }
+
     private CompletableFuture<Boolean> testTTSEngine() {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
         try {
@@ -205,9 +264,21 @@ public class TTSEngineService extends BaseEngineService {
         );
     }
 
+    /**
+     * Speaks text after any utterance still queued or playing. The returned future completes
+     * when the audio has finished playing, or was stopped by {@link #stopSpeaking}.
+     */
     public CompletableFuture<Void> speak(String text) {
-        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (isLoadPending()) {
+            return ensureLoaded().thenCompose(success -> {
+                if (!success) {
+                    throw new IllegalStateException("Failed to load TTS engine");
+                }
+                return speak(text);
+            });
+        }
         if (localTTS == null || !localTTS.isInitialized()) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
             future.completeExceptionally(new IllegalStateException("TTS not initialized"));
             return future;
         }
@@ -215,91 +286,338 @@ public class TTSEngineService extends BaseEngineService {
         try {
             switch (backend) {
                 case "mtk":
-                    mtkSpeak(text);
-                    break;
+                    return mtkSpeak(text);
                 case "local":
-                    localSpeak(text);
-                    break;
+                    return localSpeak(text);
                 case "default":
-                    defaultSpeak(text);
-                    break;
+                    return defaultSpeak(text);
                 default:
                     throw new IllegalStateException("No TTS backend available");
             }
         } catch (Exception e) {
+            SelfTestCache.invalidate(this, SELF_TEST_ENGINE);
+            CompletableFuture<Void> future = new CompletableFuture<>();
             future.completeExceptionally(e);
+            return future;
         }
-        return future;
     }
 
-    private void mtkSpeak(String text) {
+    /**
+     * Speaks text that arrives in pieces, e.g. LLM tokens, while it is still arriving. Each
+     * sentence or clause is synthesized and played as soon as it is complete.
+     */
+    public class SpeechStream {
+        private final SentenceSegmenter segmenter = new SentenceSegmenter(AppConstants.TTS_STREAM_MIN_CLAUSE_CHARS);
+        private final ExecutorService speaker = Executors.newSingleThreadExecutor(r -> new Thread(r, "tts-stream"));
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final long startMs = SystemClock.elapsedRealtime();
+        private final long startTraceNs = Tracer.now();
+        private final String id = STREAM_UTTERANCE_PREFIX + System.currentTimeMillis() + "_";
+        private volatile AudioPlaybackPipeline pipeline;
+        private int segmentCount = 0;
+        private volatile boolean closing = false;
+        private volatile String lastUtteranceId;
+        private volatile String doneUtteranceId;
+        private volatile boolean cancelled = false;
+        private volatile long firstAudioMs = -1;
+
+        /**
+         * Adds streamed text. Call from a single thread.
+         */
+        public void append(String text) {
+            if (cancelled || text == null || text.isEmpty()) {
+                return;
+            }
+            for (String segment : segmenter.feed(text)) {
+                enqueue(segment);
+            }
+        }
+
+        /**
+         * Speaks whatever text is left and completes once all of it has been played.
+         */
+        public void finish() {
+            if (cancelled) {
+                return;
+            }
+            String rest = segmenter.flush();
+            if (!rest.isEmpty()) {
+                enqueue(rest);
+            }
+            closeAfterQueuedSegments();
+        }
+
+        /**
+         * Stops speaking at once and drops the text that has not been spoken yet.
+         */
+        public void cancel() {
+            cancelled = true;
+            AudioPlaybackPipeline current = pipeline;
+            if (current != null) {
+                current.cancel();
+            }
+            if (backend.equals("default") && textToSpeech != null) {
+                textToSpeech.stop();
+            }
+            // Queued segments return at once; the speaker thread releases the track after them
+            closeAfterQueuedSegments();
+        }
+
+        public CompletableFuture<Void> getCompletion() {
+            return completion;
+        }
+
+        /**
+         * Milliseconds from the start of the stream until the first audio played, or -1.
+         */
+        public long getTimeToFirstAudioMs() {
+            return firstAudioMs;
+        }
+
+        private synchronized void enqueue(String segment) {
+            if (closing) {
+                return;
+            }
+            int index = segmentCount++;
+            speaker.execute(() -> speakSegment(segment, index));
+        }
+
+        private synchronized void closeAfterQueuedSegments() {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            speaker.execute(this::close);
+            speaker.shutdown();
+        }
+
+        private void speakSegment(String segment, int index) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                if (backend.equals("default")) {
+                    lastUtteranceId = id + index;
+                    textToSpeech.speak(segment, TextToSpeech.QUEUE_ADD, null, lastUtteranceId);
+                    return;
+                }
+                if (pipeline == null) {
+                    pipeline = audioOutput.open(localTTS.getSampleRate(), this::onAudioStarted);
+                }
+                // Synthesis of this segment overlaps playback of the previous ones
+                long trace = Tracer.begin("tts.synthesizeSegment");
+                try {
+                    synthesizeInto(segment, pipeline, () -> cancelled);
+                } finally {
+                    Tracer.end(trace);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error speaking segment " + index, e);
+                SelfTestCache.invalidate(TTSEngineService.this, SELF_TEST_ENGINE);
+            }
+        }
+
+        void onAudioStarted() {
+            if (firstAudioMs >= 0) {
+                return;
+            }
+            firstAudioMs = SystemClock.elapsedRealtime() - startMs;
+            lastTimeToFirstAudioMs = firstAudioMs;
+            timeToFirstAudioMs.record(firstAudioMs);
+            Tracer.span("tts.timeToFirstAudio", startTraceNs, Tracer.now());
+            Log.d(TAG, "Time to first audio: " + firstAudioMs + " ms");
+        }
+
+        private void close() {
+            if (pipeline != null) {
+                if (cancelled) {
+                    pipeline.cancel();
+                } else {
+                    pipeline.finish();
+                }
+                try {
+                    pipeline.awaitPlayed(AppConstants.TTS_PLAYBACK_DRAIN_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // The system engine plays queued utterances on its own; wait for the last one
+            if (lastUtteranceId == null || cancelled || lastUtteranceId.equals(doneUtteranceId)) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (activeStream == this) {
+                activeStream = null;
+            }
+            completion.complete(null);
+        }
+
+        boolean ownsUtterance(String utteranceId) {
+            return utteranceId != null && utteranceId.startsWith(id);
+        }
+
+        void onUtteranceDone(String utteranceId) {
+            doneUtteranceId = utteranceId;
+            if (closing && utteranceId.equals(lastUtteranceId)) {
+                complete();
+            }
+        }
+    }
+
+    /**
+     * Starts speaking a response that is still being generated. Any earlier stream is
+     * cancelled. Returns null if no TTS backend is ready.
+     */
+    public SpeechStream startSpeechStream() {
+        if (!isReady()) {
+            return null;
+        }
+        SpeechStream previous = activeStream;
+        if (previous != null) {
+            previous.cancel();
+        }
+        SpeechStream stream = new SpeechStream();
+        activeStream = stream;
+        return stream;
+    }
+
+    /**
+     * Time from the start of each speech stream until its first audio played.
+     */
+    public Histogram getTimeToFirstAudioMs() {
+        return timeToFirstAudioMs.copy();
+    }
+
+    public long getLastTimeToFirstAudioMs() {
+        return lastTimeToFirstAudioMs;
+    }
+
+    public long getAudioCacheHitCount() {
+        return audioCache != null ? audioCache.getHitCount() : 0;
+    }
+
+    public double getAudioCacheHitRate() {
+        return audioCache != null ? audioCache.getHitRate() : 0;
+    }
+
+    /**
+     * PCM bytes played from the audio cache instead of being synthesized.
+     */
+    public long getAudioCacheBytesSaved() {
+        return audioCache != null ? audioCache.getBytesSaved() : 0;
+    }
+
+    private CompletableFuture<Void> mtkSpeak(String text) {
         // Placeholder for MTK TTS implementation
         throw new UnsupportedOperationException("MTK TTS not implemented yet");
     }
 
-    private void localSpeak(String text) {
-        try {
-            // Initialize audio track with the sample rate
-            initAudioTrack(localTTS.getSampleRate());
-            
-            // Add a flag to track if synthesis is complete
-            final boolean[] isSynthesisComplete = new boolean[1];
-            final boolean[] isPlaybackComplete = new boolean[1];
-            
-            // Create a completion handler
-            CompletableFuture<Void> synthesisComplete = new CompletableFuture<>();
-            
-            localTTS.synthesize(
-                text,
-                0,  // speakerId
-                1.0f,  // speed
-                new Function1<float[], Unit>() {
-                    @Override
-                    public Unit invoke(float[] samples) {
-                        if (audioTrack != null && !isPlaybackComplete[0]) {
-                            playAudioSamples(samples);
-                        }
-                        return Unit.INSTANCE;
-                    }
-                },
-                new Function0<Unit>() {
-                    @Override
-                    public Unit invoke() {
-                        isSynthesisComplete[0] = true;
-                        // Add a small delay before releasing to ensure all audio is played
-                        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                            isPlaybackComplete[0] = true;
-                            releaseAudioTrack();
-                            synthesisComplete.complete(null);
-                        }, 1000); // 1 second delay to ensure playback completes
-                        return Unit.INSTANCE;
-                    }
-                }
-            );
-            
-            // Wait for synthesis to complete
+    private CompletableFuture<Void> localSpeak(String text) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        int generation = speakGeneration.get();
+        speakExecutor.execute(() -> {
+            if (generation != speakGeneration.get()) {
+                // Stopped before it started
+                future.complete(null);
+                return;
+            }
+            long speakStart = Tracer.now();
+            AudioPlaybackPipeline pipeline = null;
             try {
-                synthesisComplete.get(10, TimeUnit.SECONDS);
+                // Each sentence plays on the audio thread while the next one is synthesized
+                pipeline = audioOutput.open(localTTS.getSampleRate(), null);
+                playbacks.add(pipeline);
+                if (generation != speakGeneration.get()) {
+                    pipeline.cancel();
+                }
+                synthesizeInto(text, pipeline, () -> false);
+                Tracer.span("tts.synthesize", speakStart, Tracer.now());
+                pipeline.finish();
+
+                // Completes when the track has played the last sample; the next utterance
+                // is synthesized meanwhile
+                AudioPlaybackPipeline finished = pipeline;
+                pipeline.getPlayed().whenCompleteAsync((result, throwable) -> {
+                    playbacks.remove(finished);
+                    Tracer.span("tts.speak", speakStart, Tracer.now());
+                    future.complete(null);
+                });
             } catch (Exception e) {
-                Log.e(TAG, "Error waiting for synthesis completion", e);
+                Log.e(TAG, "Error in local TTS", e);
+                SelfTestCache.invalidate(this, SELF_TEST_ENGINE);
+                if (pipeline != null) {
+                    pipeline.cancel();
+                    playbacks.remove(pipeline);
+                }
+                future.completeExceptionally(e);
             }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error in local TTS", e);
-            releaseAudioTrack();
-        }
+        });
+        return future;
     }
 
-    private void defaultSpeak(String text) {
-        try {
-            String utteranceId = "TTS_" + System.currentTimeMillis();
-            int result = textToSpeech.speak(text, TextToSpeech.QUEUE_FLUSH, null, utteranceId);
-            
-            if (result != TextToSpeech.SUCCESS) {
-                throw new IllegalStateException("TTS initialization failed");
+    /**
+     * Synthesizes text into the pipeline, or plays it from the audio cache if it was
+     * synthesized before. Audio is only cached when synthesis ran to the end.
+     */
+    private void synthesizeInto(String text, AudioPlaybackPipeline pipeline, BooleanSupplier cancelled) {
+        String key = null;
+        if (audioCache != null) {
+            key = TTSAudioCache.buildKey(text, AppConstants.TTS_SPEAKER_ID, AppConstants.TTS_SPEED, modelFingerprint);
+            TTSAudioCache.Audio cached = audioCache.get(key);
+            if (cached != null) {
+                Tracer.instant("tts.cacheHit");
+                pipeline.write(cached.pcm);
+                return;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error in default TTS", e);
+        }
+
+        TTSAudioCache.Recorder recorder = key != null ? new TTSAudioCache.Recorder() : null;
+        boolean[] interrupted = {false};
+        localTTS.synthesizeStreaming(text, AppConstants.TTS_SPEAKER_ID, AppConstants.TTS_SPEED,
+            new Function1<float[], Boolean>() {
+                @Override
+                public Boolean invoke(float[] samples) {
+                    Tracer.instant("tts.samples");
+                    if (cancelled.getAsBoolean() || !pipeline.write(samples)) {
+                        interrupted[0] = true;
+                        return false;
+                    }
+                    if (recorder != null) {
+                        recorder.append(samples);
+                    }
+                    return true;
+                }
+            });
+        if (recorder != null && !interrupted[0]) {
+            audioCache.put(key, recorder.toAudio(localTTS.getSampleRate()));
+        }
+    }
+
+    private CompletableFuture<Void> defaultSpeak(String text) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        String utteranceId = "TTS_" + System.nanoTime();
+        utteranceFutures.put(utteranceId, future);
+        // Queued behind earlier utterances, which the engine plays back to back
+        int result = textToSpeech.speak(text, TextToSpeech.QUEUE_ADD, null, utteranceId);
+        if (result != TextToSpeech.SUCCESS) {
+            Log.e(TAG, "Error in default TTS: " + result);
+            utteranceFutures.remove(utteranceId);
+            future.completeExceptionally(new IllegalStateException("TTS speak failed: " + result));
+        }
+        return future;
+    }
+
+    private void completeUtterance(String utteranceId, Throwable error) {
+        CompletableFuture<Void> future = utteranceFutures.remove(utteranceId);
+        if (future == null) {
+            return;
+        }
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(null);
         }
     }
 
@@ -308,99 +626,92 @@ public class TTSEngineService extends BaseEngineService {
             textToSpeech.setOnUtteranceProgressListener(new UtteranceProgressListener() {
                 @Override public void onStart(String utteranceId) {
                     Log.d(TAG, "Started speaking: " + utteranceId);
+                    SpeechStream stream = activeStream;
+                    if (stream != null && stream.ownsUtterance(utteranceId)) {
+                        stream.onAudioStarted();
+                    }
                 }
 
                 @Override public void onDone(String utteranceId) {
                     Log.d(TAG, "Finished speaking: " + utteranceId);
+                    completeUtterance(utteranceId, null);
+                    SpeechStream stream = activeStream;
+                    if (stream != null && stream.ownsUtterance(utteranceId)) {
+                        stream.onUtteranceDone(utteranceId);
+                    }
                 }
 
                 @Override public void onError(String utteranceId) {
                     Log.e(TAG, "Error speaking: " + utteranceId);
+                    completeUtterance(utteranceId, new IllegalStateException("Error speaking " + utteranceId));
+                    SpeechStream stream = activeStream;
+                    if (stream != null && stream.ownsUtterance(utteranceId)) {
+                        stream.onUtteranceDone(utteranceId);
+                    }
                 }
-            });
-        }
-    }
-
-    private void initAudioTrack(int sampleRate) {
-        // Use a larger buffer size for better audio quality
-        int minBufferSize = AudioTrack.getMinBufferSize(
-            sampleRate,
-            AudioFormat.CHANNEL_OUT_MONO,
-            AudioFormat.ENCODING_PCM_FLOAT
-        );
-        int bufferSize = Math.max(minBufferSize * 4, 32768); // Use larger buffer
-
-        AudioAttributes audioAttributes = new AudioAttributes.Builder()
-            .setUsage(AudioAttributes.USAGE_MEDIA)
-            .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
-            .setFlags(AudioAttributes.FLAG_AUDIBILITY_ENFORCED) // Enforce audibility
-            .build();
-
-        AudioFormat audioFormat = new AudioFormat.Builder()
-            .setSampleRate(sampleRate)
-            .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
-            .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
-            .build();
-
-        audioTrack = new AudioTrack.Builder()
-            .setAudioAttributes(audioAttributes)
-            .setAudioFormat(audioFormat)
-            .setBufferSizeInBytes(bufferSize)
-            .setTransferMode(AudioTrack.MODE_STREAM)
-            .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY) // Better performance
-            .build();
-
-        // Set maximum volume
-        audioTrack.setVolume(AudioTrack.getMaxVolume());
-        audioTrack.play();
-    }
 
-    private void playAudioSamples(float[] samples) {
-        if (audioTrack != null && audioTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
-            try {
-                // Amplify the samples to increase volume
-                float[] amplifiedSamples = new float[samples.length];
-                for (int i = 0; i < samples.length; i++) {
-                    // Amplify by 3x while preventing clipping
-                    amplifiedSamples[i] = Math.max(-1.0f, Math.min(1.0f, samples[i] * 3.0f));
-                }
-                
-                // Write samples with timeout to prevent blocking
-                int result = audioTrack.write(amplifiedSamples, 0, amplifiedSamples.length, AudioTrack.WRITE_BLOCKING);
-                if (result < 0) {
-                    Log.e(TAG, "Error writing audio samples: " + result);
+                @Override public void onStop(String utteranceId, boolean interrupted) {
+                    Log.d(TAG, "Stopped speaking: " + utteranceId);
+                    completeUtterance(utteranceId, null);
+                    SpeechStream stream = activeStream;
+                    if (stream != null && stream.ownsUtterance(utteranceId)) {
+                        stream.onUtteranceDone(utteranceId);
+                    }
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error playing audio samples", e);
-            }
-        }
-    }
-
-    private void releaseAudioTrack() {
-        if (audioTrack != null) {
-            try {
-                // Ensure all queued audio is played before stopping
-                audioTrack.stop();
-                Thread.sleep(100); // Small delay to ensure clean stop
-                audioTrack.release();
-            } catch (Exception e) {
-                Log.e(TAG, "Error releasing AudioTrack", e);
-            }
-            audioTrack = null;
+            });
         }
     }
 
     public void stopSpeaking() {
+        SpeechStream stream = activeStream;
+        if (stream != null) {
+            stream.cancel();
+        }
+        // Utterances still queued for synthesis are skipped
+        speakGeneration.incrementAndGet();
+        for (AudioPlaybackPipeline pipeline : playbacks) {
+            pipeline.cancel();
+        }
         if (backend.equals("local") && localTTS != null) {
             localTTS.stop();
-            releaseAudioTrack();
         } else if (backend.equals("default") && textToSpeech != null) {
             textToSpeech.stop();
         }
     }
 
+    /**
+     * The audio cache drops its memory tier at any pressure. TTS is released at the idle
+     * tier unless audio is playing.
+     */
+    @Override
+    protected List<String> releaseForMemoryPressure(int tier) {
+        if (audioCache != null) {
+            audioCache.trimMemory();
+        }
+        if (tier < TRIM_TIER_IDLE || !isInitialized || !playbacks.isEmpty() || activeStream != null) {
+            return Collections.emptyList();
+        }
+        if (localTTS != null) {
+            localTTS.release();
+            localTTS = null;
+        }
+        if (audioOutput != null) {
+            audioOutput.release();
+            audioOutput = null;
+        }
+        if (textToSpeech != null) {
+            textToSpeech.shutdown();
+            textToSpeech = null;
+            isTextToSpeechInitialized = false;
+        }
+        isInitialized = false;
+        return Collections.singletonList("TTS " + backend);
+    }
+
     @Override
     public void onDestroy() {
+        stopSpeaking();
+        speakExecutor.shutdownNow();
         if (localTTS != null) {
             localTTS.release();
         }
@@ -408,7 +719,9 @@ public class TTSEngineService extends BaseEngineService {
             textToSpeech.stop();
             textToSpeech.shutdown();
         }
-        releaseAudioTrack();
+        if (audioOutput != null) {
+            audioOutput.release();
+        }
         super.onDestroy();
     }
 
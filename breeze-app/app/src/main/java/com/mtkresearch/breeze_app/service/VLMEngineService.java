@@ -5,6 +5,8 @@ import android.net.Uri;
 import android.os.IBinder;
 import android.util.Log;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import org.pytorch.executorch.LlamaCallback;
@@ -27,6 +29,7 @@ public class VLMEngineService extends BaseEngineService {
     
     private LlamaModule mModule;
     private long startPos = 0;
+    private volatile boolean isAnalyzing = false;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -136,6 +139,14 @@ public class VLMEngineService extends BaseEngineService {
     }
 
     public CompletableFuture<String> analyzeImage(Uri imageUri, String userPrompt) {
+        if (isLoadPending()) {
+            return ensureLoaded().thenCompose(success -> {
+                if (!success) {
+                    throw new IllegalStateException("Failed to load VLM engine");
+                }
+                return analyzeImage(imageUri, userPrompt);
+            });
+        }
         if (!isInitialized || !backend.equals("local_cpu")) {
             CompletableFuture<String> future = new CompletableFuture<>();
             future.completeExceptionally(new IllegalStateException("Engine not initialized or wrong backend"));
@@ -143,6 +154,7 @@ public class VLMEngineService extends BaseEngineService {
         }
 
         return CompletableFuture.supplyAsync(() -> {
+            isAnalyzing = true;
             try {
                 Log.d(TAG, "Processing image: " + imageUri);
                 ETImage processedImage = new ETImage(getContentResolver(), imageUri);
@@ -183,10 +195,26 @@ public class VLMEngineService extends BaseEngineService {
             } catch (Exception e) {
                 Log.e(TAG, "Error analyzing image", e);
                 throw new RuntimeException("Failed to analyze image: " + e.getMessage(), e);
+            } finally {
+                isAnalyzing = false;
             }
         });
     }
 
+    /**
+     * The VLM is released at the idle tier, before the LLM, unless an image is being analyzed.
+     */
+    @Override
+    protected List<String> releaseForMemoryPressure(int tier) {
+        if (tier < TRIM_TIER_IDLE || mModule == null || isAnalyzing) {
+            return Collections.emptyList();
+        }
+        resetModel();
+        mModule = null;
+        isInitialized = false;
+        return Collections.singletonList("VLM model");
+    }
+
     private void resetModel() {
         if (mModule != null) {
             mModule.resetNative();
@@ -18,6 +18,9 @@ public class AppConstants {
     public static final String KEY_FIRST_LAUNCH = "first_launch";
     public static final String KEY_TEMPERATURE = "temperature";
     public static final String KEY_PREFERRED_BACKEND = "preferred_backend";
+    public static final String KEY_BACKEND_PROFILE = "backend_profile";
+    public static final String KEY_SELF_TEST_PREFIX = "self_test_";  // Followed by the engine name
+    public static final String KEY_SPEAK_RESPONSES = "speak_responses";
     public static final String DEFAULT_BACKEND = "cpu";  // Default to CPU backend
     
     // Service Enable Flags
@@ -25,6 +28,10 @@ public class AppConstants {
     public static final boolean VLM_ENABLED = false; // VLM is experimental
     public static final boolean ASR_ENABLED = false; // ASR requires permission
     public static final boolean TTS_ENABLED = true;  // TTS is stable
+
+    // When true: TTS, ASR and VLM are registered as available at startup and load their
+    // models on first use, or when the user is about to use them
+    public static final boolean LAZY_ENGINE_LOADING = true;
     
     // Backend Constants
     public static final String BACKEND_NONE = "none";
@@ -40,12 +47,15 @@ public class AppConstants {
     public static final int MAX_MTK_INIT_ATTEMPTS = 5;
     public static final long MTK_CLEANUP_TIMEOUT_MS = 5000;  // 5 seconds timeout for cleanup
     public static final long MTK_NATIVE_OP_TIMEOUT_MS = 2000;  // 2 seconds timeout for native operations
-    public static final long BACKEND_INIT_DELAY_MS = 200;    // Delay between backend initialization attempts
-    public static final long BACKEND_CLEANUP_DELAY_MS = 100; // Delay for backend cleanup operations
+    public static final int MTK_MAX_RESPONSE_TOKENS = 256;
+    public static final int MTK_CONTEXT_TOKENS = 2048;        // Native context kept across turns
+    public static final int MTK_PROMPT_TOKEN_SIZE = 128;      // Token size of the prompt (prefill) model
+    public static final int MTK_SWAP_MIN_PROMPT_TOKENS = 16;  // Shorter inputs stay on the decode model
     
     // LLM Service Constants
     public static final long LLM_INIT_TIMEOUT_MS = 300000;  // 5 minutes for initialization
     public static final long LLM_GENERATION_TIMEOUT_MS = Long.MAX_VALUE;  // No timeout for generation
+    public static final long BATCH_ITEM_TIMEOUT_MS = 300000;  // 5 minutes for one batch evaluation prompt
     public static final long LLM_NATIVE_OP_TIMEOUT_MS = 10000;  // 10 seconds for native ops
     public static final long LLM_CLEANUP_TIMEOUT_MS = 10000;  // 10 seconds for cleanup
     public static final int LLM_MAX_MTK_INIT_ATTEMPTS = 3;
@@ -63,6 +73,20 @@ public class AppConstants {
     public static final String TTS_MODEL_FILE = "breeze2-vits.onnx";
     public static final String TTS_LEXICON_FILE = "lexicon.txt";
     public static final String TTS_TOKENS_FILE = "tokens.txt";
+    public static final int TTS_STREAM_MIN_CLAUSE_CHARS = 6;   // Shorter clauses are joined to the next
+    public static final int TTS_PLAYBACK_BUFFERS = 8;             // Preallocated buffers between synthesis and playback
+    public static final int TTS_PLAYBACK_BUFFER_SAMPLES = 4096;   // About 0.2 s per buffer at 22 kHz
+    public static final float TTS_PLAYBACK_GAIN = 3.0f;
+    public static final long TTS_PLAYBACK_DRAIN_TIMEOUT_MS = 60000;
+    public static final long TTS_PLAYBACK_COMPLETION_SLACK_MS = 1000; // Wait past the expected end before giving up on the playback head
+    public static final long TTS_AUDIO_IDLE_PAUSE_MS = 2000;      // Longer than the track buffer, so queued audio has played
+    public static final int TTS_SPEAKER_ID = 0;
+    public static final float TTS_SPEED = 1.0f;
+
+    // Synthesized speech cache, so repeated text is not synthesized again
+    public static final boolean TTS_AUDIO_CACHE_ENABLED = true;
+    public static final long TTS_AUDIO_CACHE_MEMORY_BYTES = 8 * 1024 * 1024;  // 8MB, about 3 minutes at 22 kHz
+    public static final long TTS_AUDIO_CACHE_DISK_BYTES = 64 * 1024 * 1024;   // 64MB
     
     // Model Download Constants
     private static final String MODEL_BASE_URL = "https://huggingface.co/MediaTek-Research/Breeze-Tiny-Instruct-v0_1-mobile/resolve/main/";
@@ -298,6 +322,11 @@ public class AppConstants {
     public static int getLLMMaxInputLength(Context context) {
         return getLLMMaxSeqLength(context) - getLLMMinOutputLength(context);
     }
+
+    // Number of KV cache positions the model was exported with
+    public static int getLLMContextWindow(Context context) {
+        return getCurrentModelPath(context).contains("2048") ? 2048 : getLLMMaxSeqLength(context);
+    }
     
     // LLM Response Messages
     public static final String LLM_ERROR_RESPONSE = "[!!!] LLM engine backend failed";
@@ -308,6 +337,28 @@ public class AppConstants {
     
     // LLM Configuration
     public static final float LLM_TEMPERATURE = 0.0f;
+
+    // When true: the CPU backend keeps the KV cache between turns and only prefills new text
+    public static final boolean LLM_KV_CACHE_REUSE_ENABLED = true;
+
+    // Model residency: how many CPU models may stay loaded, and memory to leave free
+    public static final int LLM_MAX_RESIDENT_MODELS = 2;
+    public static final long LLM_RESIDENCY_HEADROOM_BYTES = 512L * 1024 * 1024;  // 512MB
+
+    // Response cache for repeated prompts (only used while LLM_TEMPERATURE is 0)
+    // Off by default: with it on, repeating a question replays the earlier answer
+    public static final boolean LLM_RESPONSE_CACHE_ENABLED = false;
+    public static final int LLM_RESPONSE_CACHE_MEMORY_ENTRIES = 32;
+    public static final int LLM_RESPONSE_CACHE_DISK_ENTRIES = 500;
+    public static final long LLM_RESPONSE_CACHE_DISK_BYTES = 4 * 1024 * 1024;  // 4MB
+    public static final int LLM_RESPONSE_CACHE_REPLAY_CHARS = 2;         // Characters per replayed token
+    public static final long LLM_RESPONSE_CACHE_REPLAY_INTERVAL_MS = 16; // About one display frame
+
+    // First-run backend calibration, rerun when the model, app version or device changes
+    public static final boolean BACKEND_AUTOTUNE_ENABLED = true;
+    public static final String BACKEND_CALIBRATION_PROMPT = "Explain in a few sentences why the sky is blue.";
+    public static final int BACKEND_CALIBRATION_OUTPUT_TOKENS = 32;
+    public static final long BACKEND_CALIBRATION_TIMEOUT_MS = 60000;  // 1 minute per backend
     
     // When false: Send button always shows send icon and only sends messages
     // When true: Send button toggles between send and audio chat mode
@@ -330,6 +381,24 @@ public class AppConstants {
     public static final long TAP_TIMEOUT_MS = 3000;
     public static final int INIT_DELAY_MS = 1000;
 
+    // Batch evaluation of JSONL prompt files, started through ChatActivity intent extras
+    public static final String EXTRA_BATCH_INPUT = "batch_input";
+    public static final String EXTRA_BATCH_OUTPUT = "batch_output";
+    public static final String EXTRA_BATCH_CANCEL = "batch_cancel";
+    public static final String BATCH_DIR = "eval";
+
+    // Tracing of chat turns, exported from the debug menu (long-press the model name)
+    public static final boolean TRACE_ENABLED = true;
+    public static final int TRACE_BUFFER_EVENTS = 8192;
+
+    // Engine startup: engines load concurrently within these limits
+    public static final long STARTUP_MEMORY_BUDGET_MB = 4096;
+    public static final int STARTUP_MAX_CONCURRENT_LOADS = 2;
+    public static final long STARTUP_ENGINE_TIMEOUT_MS = LLM_INIT_TIMEOUT_MS;
+    public static final long STARTUP_VLM_MEMORY_MB = 4096;  // Estimated memory while loading
+    public static final long STARTUP_ASR_MEMORY_MB = 200;
+    public static final long STARTUP_TTS_MEMORY_MB = 200;
+
     // Activity Tags
     public static final String CHAT_ACTIVITY_TAG = "ChatActivity";
     public static final String MAIN_ACTIVITY_TAG = "MainActivity";
@@ -44,10 +44,13 @@ public class ChatHistoryManager {
 
     public void saveHistory(ChatHistory history) {
         File file = new File(new File(context.getFilesDir(), HISTORY_DIR), history.getId() + ".dat");
+        long trace = Tracer.begin("history.save");
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
             oos.writeObject(history);
         } catch (IOException e) {
             Log.e(TAG, "Error saving chat history", e);
+        } finally {
+            Tracer.end(trace);
         }
     }
 
@@ -3,6 +3,8 @@ package com.mtkresearch.breeze_app.utils;
 import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 public class ChatMessage implements Serializable {
@@ -13,6 +15,10 @@ public class ChatMessage implements Serializable {
     private int promptId; // Added to group messages in the same conversation
     private String imageUriString; // Store image URI as string for serialization
 
+    // Streaming appends go to the builder, which then holds the text. The UI thread appends
+    // while workers read, so both fields are guarded by this.
+    private transient StringBuilder textBuilder;
+
     public ChatMessage(@NonNull String text, boolean isUser) {
         this(text, isUser, 0);
     }
@@ -24,22 +30,29 @@ public class ChatMessage implements Serializable {
     }
 
     @NonNull
-    public String getText() {
+    public synchronized String getText() {
+        if (textBuilder != null) {
+            return textBuilder.toString();
+        }
         return text != null ? text : "";
     }
 
-    public void updateText(@Nullable String newText) {
+    public synchronized void updateText(@Nullable String newText) {
         this.text = newText != null ? newText : "";
+        this.textBuilder = null;
     }
 
-    public void appendText(@Nullable String newText) {
-        if (newText != null) {
-            this.text = getText() + newText;
+    public synchronized void appendText(@Nullable String newText) {
+        if (newText != null && !newText.isEmpty()) {
+            if (textBuilder == null) {
+                textBuilder = new StringBuilder(getText());
+            }
+            textBuilder.append(newText);
         }
     }
 
     public boolean hasText() {
-        return text != null && !text.trim().isEmpty();
+        return !getText().trim().isEmpty();
     }
 
     public boolean isUser() {
@@ -72,13 +85,21 @@ public class ChatMessage implements Serializable {
     }
 
     public boolean hasContent() {
-        return text != null && !text.isEmpty() && !text.equals("Thinking...");
+        String current = getText();
+        return !current.isEmpty() && !current.equals("Thinking...");
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        if (textBuilder != null) {
+            text = textBuilder.toString();  // Serialize the streamed text
+        }
+        out.defaultWriteObject();
     }
 
     @Override
     public String toString() {
         return "ChatMessage{" +
-                "text='" + text + '\'' +
+                "text='" + getText() + '\'' +
                 ", isUser=" + isUser +
                 ", promptId=" + promptId +
                 ", hasImage=" + hasImage() +
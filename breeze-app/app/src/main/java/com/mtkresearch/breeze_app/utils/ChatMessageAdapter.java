@@ -72,6 +72,37 @@ public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.
         }
     }
 
+    /**
+     * Rebinds the given message in full.
+     */
+    public void notifyMessageChanged(ChatMessage message) {
+        int index = indexOf(message);
+        if (index >= 0) {
+            notifyItemChanged(index);
+        }
+    }
+
+    /**
+     * Tells the bound view that {@code chunk} was appended to the message, so it can append
+     * the text instead of rebinding the whole message.
+     */
+    public void notifyMessageAppended(ChatMessage message, String chunk) {
+        int index = indexOf(message);
+        if (index >= 0) {
+            notifyItemChanged(index, new AppendPayload(chunk));
+        }
+    }
+
+    private int indexOf(ChatMessage message) {
+        // Streaming messages are almost always the last one
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) == message) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public void removeLastMessage() {
         if (!messages.isEmpty()) {
             int lastIndex = messages.size() - 1;
@@ -93,6 +124,23 @@ public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.
         return new MessageViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        for (Object payload : payloads) {
+            if (!(payload instanceof AppendPayload)) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+        }
+        for (Object payload : payloads) {
+            holder.messageText.append(((AppendPayload) payload).chunk);
+        }
+    }
+
     @Override
     public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
         ChatMessage message = messages.get(position);
@@ -204,6 +252,14 @@ public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.
         return messages.size();
     }
 
+    private static class AppendPayload {
+        final String chunk;
+
+        AppendPayload(String chunk) {
+            this.chunk = chunk;
+        }
+    }
+
     static class MessageViewHolder extends RecyclerView.ViewHolder {
         private final TextView messageText;
         private final ImageButton speakerButton;
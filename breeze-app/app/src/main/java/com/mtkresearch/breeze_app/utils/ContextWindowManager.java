@@ -0,0 +1,99 @@
+package com.mtkresearch.breeze_app.utils;
+
+import com.executorch.ModelType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects conversation history by token budget instead of message count.
+ *
+ * Completed turns (a user message and its answer) are tracked incrementally as messages are
+ * added, and each turn is formatted and counted once. History is then filled from the newest
+ * turn to the oldest, keeping whole turns only, until the budget is used up.
+ */
+public class ContextWindowManager {
+    private static class Turn {
+        final ChatMessage user;
+        final ChatMessage assistant;
+        String countedText;  // Assistant text the cached count was computed for
+        String formatted;
+        int tokens;
+
+        Turn(ChatMessage user, ChatMessage assistant) {
+            this.user = user;
+            this.assistant = assistant;
+        }
+    }
+
+    private final ModelType modelType;
+    private final List<Turn> turns = new ArrayList<>();
+    private ChatMessage pendingUser;
+
+    public ContextWindowManager(ModelType modelType) {
+        this.modelType = modelType;
+    }
+
+    public synchronized void onMessageAdded(ChatMessage message) {
+        if (message.isUser()) {
+            // An unanswered user message is replaced by the next one
+            pendingUser = message;
+        } else if (pendingUser != null) {
+            turns.add(new Turn(pendingUser, message));
+            pendingUser = null;
+        }
+    }
+
+    public synchronized void onMessageRemoved(ChatMessage message) {
+        if (message == pendingUser) {
+            pendingUser = null;
+            return;
+        }
+        if (!turns.isEmpty() && turns.get(turns.size() - 1).assistant == message) {
+            pendingUser = turns.remove(turns.size() - 1).user;
+        }
+    }
+
+    public synchronized void clear() {
+        turns.clear();
+        pendingUser = null;
+    }
+
+    public synchronized int getTurnCount() {
+        return turns.size();
+    }
+
+    /**
+     * Builds the formatted history of the newest whole turns that fit in {@code budgetTokens}.
+     */
+    public synchronized String buildHistory(TokenCounter counter, int budgetTokens) {
+        int used = 0;
+        int first = turns.size();
+        while (first > 0) {
+            Turn turn = turns.get(first - 1);
+            refresh(turn, counter);
+            if (used + turn.tokens > budgetTokens) {
+                break;
+            }
+            used += turn.tokens;
+            first--;
+        }
+
+        StringBuilder history = new StringBuilder();
+        for (int i = first; i < turns.size(); i++) {
+            history.append(turns.get(i).formatted);
+        }
+        return history.toString();
+    }
+
+    private void refresh(Turn turn, TokenCounter counter) {
+        // The answer may still have been streaming when the turn was recorded
+        String assistantText = turn.assistant.getText();
+        if (turn.formatted != null && assistantText.equals(turn.countedText)) {
+            return;
+        }
+        turn.countedText = assistantText;
+        turn.formatted = PromptManager.formatTurn(turn.user.getText(), assistantText, modelType);
+        turn.tokens = counter.countTokens(turn.formatted);
+    }
+}
@@ -17,17 +17,19 @@ public class ConversationManager {
 
     // Internal message storage
     private final List<ChatMessage> messages = new ArrayList<>();
+    private final ContextWindowManager contextWindow = new ContextWindowManager(ModelType.LLAMA_3_2);
 
     // Message management methods
     public void addMessage(@NonNull ChatMessage message) {
         messages.add(message);
+        contextWindow.onMessageAdded(message);
         Log.d(TAG, String.format("Added message to history: total=%d, isUser=%b, text='%s'", 
             messages.size(), message.isUser(), message.getText()));
     }
 
     public void removeLastMessage() {
         if (!messages.isEmpty()) {
-            messages.remove(messages.size() - 1);
+            contextWindow.onMessageRemoved(messages.remove(messages.size() - 1));
         }
     }
 
@@ -38,6 +40,15 @@ public class ConversationManager {
 
     public void clearMessages() {
         messages.clear();
+        contextWindow.clear();
+    }
+
+    /**
+     * Gets the token-budgeted view of the completed turns, kept in sync with the messages.
+     */
+    @NonNull
+    public ContextWindowManager getContextWindow() {
+        return contextWindow;
     }
 
     /**
@@ -0,0 +1,268 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts engines concurrently, within a memory budget and a limit on concurrent loads.
+ *
+ * An engine starts once the engines it depends on are ready (or have failed) and the budget
+ * allows it; engines are considered in registration order. An engine that needs more than the
+ * whole budget still starts when nothing else is loading. The time each engine started and
+ * became ready is recorded in a timeline.
+ */
+public class EngineStartupOrchestrator {
+    private static final String TAG = "EngineStartup";
+
+    public interface StartStep {
+        /**
+         * Starts the engine and returns a future that completes with true once it is ready.
+         */
+        CompletableFuture<Boolean> start() throws Exception;
+    }
+
+    public interface Listener {
+        void onEngineReady(String name, boolean success);
+        void onStartupComplete(List<TimelineEntry> timeline);
+    }
+
+    public static class TimelineEntry {
+        private final String name;
+        private final long memoryMb;
+        private long startedAtMs = -1;
+        private long readyAtMs = -1;
+        private boolean success = false;
+
+        TimelineEntry(String name, long memoryMb) {
+            this.name = name;
+            this.memoryMb = memoryMb;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getMemoryMb() {
+            return memoryMb;
+        }
+
+        /** Milliseconds from the start of startup until the engine started loading, or -1. */
+        public long getStartedAtMs() {
+            return startedAtMs;
+        }
+
+        /** Milliseconds from the start of startup until the engine was ready or failed, or -1. */
+        public long getReadyAtMs() {
+            return readyAtMs;
+        }
+
+        public long getLoadMs() {
+            return startedAtMs >= 0 && readyAtMs >= 0 ? readyAtMs - startedAtMs : -1;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: start %d ms, ready %d ms (load %d ms, ~%d MB) %s",
+                name, startedAtMs, readyAtMs, getLoadMs(), memoryMb, success ? "ok" : "failed");
+        }
+    }
+
+    private static class Engine {
+        final String name;
+        final long memoryMb;
+        final List<String> dependencies;
+        final StartStep step;
+        final TimelineEntry entry;
+        boolean started = false;
+        boolean done = false;
+
+        Engine(String name, long memoryMb, List<String> dependencies, StartStep step) {
+            this.name = name;
+            this.memoryMb = memoryMb;
+            this.dependencies = dependencies;
+            this.step = step;
+            this.entry = new TimelineEntry(name, memoryMb);
+        }
+    }
+
+    private final long memoryBudgetMb;
+    private final int maxConcurrentLoads;
+    private final long engineTimeoutMs;
+    private final Map<String, Engine> engines = new LinkedHashMap<>();
+    private final ScheduledThreadPoolExecutor executor;
+    private Listener listener;
+
+    private long startedAt = -1;
+    private int runningLoads = 0;
+    private long runningMemoryMb = 0;
+    private boolean cancelled = false;
+
+    public EngineStartupOrchestrator(long memoryBudgetMb, int maxConcurrentLoads, long engineTimeoutMs) {
+        this.memoryBudgetMb = memoryBudgetMb;
+        this.maxConcurrentLoads = maxConcurrentLoads;
+        this.engineTimeoutMs = engineTimeoutMs;
+        this.executor = new ScheduledThreadPoolExecutor(maxConcurrentLoads, runnable -> new Thread(() -> {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "engine-startup"));
+        // Pending timeout checks are dropped once every engine is done
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Registers an engine. Must be called before {@link #start()}.
+     *
+     * @param memoryMb estimated memory the engine needs while loading
+     * @param dependsOn engines that must be ready or failed before this one starts
+     */
+    public synchronized void register(String name, long memoryMb, StartStep step, String... dependsOn) {
+        engines.put(name, new Engine(name, memoryMb, Arrays.asList(dependsOn), step));
+    }
+
+    public void start() {
+        boolean complete;
+        synchronized (this) {
+            startedAt = SystemClock.elapsedRealtime();
+            complete = engines.isEmpty();
+        }
+        if (complete) {
+            onAllDone();
+            return;
+        }
+        schedule();
+    }
+
+    /**
+     * Stops starting engines. Engines already loading finish on their own.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+    }
+
+    public synchronized List<TimelineEntry> getTimeline() {
+        List<TimelineEntry> timeline = new ArrayList<>();
+        for (Engine engine : engines.values()) {
+            timeline.add(engine.entry);
+        }
+        return timeline;
+    }
+
+    private void schedule() {
+        List<Engine> ready = new ArrayList<>();
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            for (Engine engine : engines.values()) {
+                if (engine.started || !dependenciesDone(engine)) {
+                    continue;
+                }
+                boolean fits = runningLoads == 0
+                    || (runningLoads < maxConcurrentLoads && runningMemoryMb + engine.memoryMb <= memoryBudgetMb);
+                if (!fits) {
+                    continue;
+                }
+                engine.started = true;
+                engine.entry.startedAtMs = SystemClock.elapsedRealtime() - startedAt;
+                runningLoads++;
+                runningMemoryMb += engine.memoryMb;
+                ready.add(engine);
+            }
+        }
+        for (Engine engine : ready) {
+            launch(engine);
+        }
+    }
+
+    private boolean dependenciesDone(Engine engine) {
+        for (String dependency : engine.dependencies) {
+            Engine other = engines.get(dependency);
+            if (other != null && !other.done) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void launch(Engine engine) {
+        Log.d(TAG, "Starting " + engine.name);
+        executor.execute(() -> {
+            try {
+                engine.step.start().whenComplete((success, throwable) -> {
+                    if (throwable != null) {
+                        Log.e(TAG, "Error starting " + engine.name, throwable);
+                    }
+                    finish(engine, throwable == null && Boolean.TRUE.equals(success));
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting " + engine.name, e);
+                finish(engine, false);
+            }
+        });
+        executor.schedule(() -> {
+            if (finish(engine, false)) {
+                Log.w(TAG, engine.name + " did not become ready within " + engineTimeoutMs + " ms");
+            }
+        }, engineTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks an engine ready or failed. Returns false if it already was.
+     */
+    private boolean finish(Engine engine, boolean success) {
+        boolean allDone;
+        synchronized (this) {
+            if (engine.done) {
+                return false;
+            }
+            engine.done = true;
+            engine.entry.success = success;
+            engine.entry.readyAtMs = SystemClock.elapsedRealtime() - startedAt;
+            runningLoads--;
+            runningMemoryMb -= engine.memoryMb;
+            allDone = true;
+            for (Engine other : engines.values()) {
+                allDone &= other.done;
+            }
+        }
+        Log.d(TAG, engine.entry.toString());
+        if (listener != null) {
+            listener.onEngineReady(engine.name, success);
+        }
+        if (allDone) {
+            onAllDone();
+        } else {
+            schedule();
+        }
+        return true;
+    }
+
+    private void onAllDone() {
+        List<TimelineEntry> timeline = getTimeline();
+        Log.d(TAG, "Engine startup complete: " + timeline);
+        synchronized (this) {
+            executor.shutdown();
+        }
+        if (listener != null) {
+            listener.onStartupComplete(timeline);
+        }
+    }
+}
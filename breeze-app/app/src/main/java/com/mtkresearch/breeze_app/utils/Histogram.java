@@ -0,0 +1,118 @@
+package com.mtkresearch.breeze_app.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed-size histogram with HDR-style log-linear buckets: values are exact up to 127 and
+ * within 1/64 (about 1.6%) above that, up to {@link #MAX_VALUE} units. Recording never
+ * allocates, so it is cheap enough to call on every request.
+ *
+ * A resolution lets fractional quantities be recorded, e.g. 0.01 for tokens/s with two
+ * decimals. Values are stored as whole multiples of the resolution.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;  // Buckets per power of two
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;      // Exact values below this
+    private static final int MAX_EXPONENT = 40;
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final double resolution;
+    private final long[] counts = new long[LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS];
+    private long totalCount = 0;
+    private long minUnits = Long.MAX_VALUE;
+    private long maxUnits = 0;
+    private double sum = 0;
+
+    public Histogram(double resolution) {
+        this.resolution = resolution;
+    }
+
+    public synchronized void record(double value) {
+        long units = Math.max(0, Math.min(MAX_VALUE, Math.round(value / resolution)));
+        counts[indexOf(units)]++;
+        totalCount++;
+        minUnits = Math.min(minUnits, units);
+        maxUnits = Math.max(maxUnits, units);
+        sum += units * resolution;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        minUnits = Long.MAX_VALUE;
+        maxUnits = 0;
+        sum = 0;
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    public synchronized double getMin() {
+        return totalCount == 0 ? 0 : minUnits * resolution;
+    }
+
+    public synchronized double getMax() {
+        return maxUnits * resolution;
+    }
+
+    public synchronized double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * Returns the value at the given percentile (0-100). Like HdrHistogram, this is the
+     * highest value that falls into the same bucket, capped at the recorded maximum.
+     */
+    public synchronized double getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(totalCount * Math.min(100, percentile) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestInBucket(i), maxUnits) * resolution;
+            }
+        }
+        return maxUnits * resolution;
+    }
+
+    public synchronized Histogram copy() {
+        Histogram copy = new Histogram(resolution);
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        copy.totalCount = totalCount;
+        copy.minUnits = minUnits;
+        copy.maxUnits = maxUnits;
+        copy.sum = sum;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+            getCount(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+    }
+
+    private static int indexOf(long units) {
+        if (units < LINEAR_LIMIT) {
+            return (int) units;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(units);  // >= SUB_BUCKET_BITS + 1
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (units >> shift) - SUB_BUCKETS;  // 0 .. SUB_BUCKETS - 1
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestInBucket(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,286 @@
+package com.mtkresearch.breeze_app.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pure Java port of the tokenizers the ExecuTorch llama runner reads from tokenizer.bin, used
+ * for exact prompt budgeting. Two formats are supported, mirroring the runner:
+ * <ul>
+ *   <li>Tiktoken (Llama 3): one "base64-bytes rank" pair per line, plus the Llama 3 special
+ *   tokens appended after the base vocabulary.</li>
+ *   <li>BPE (llama2.c): a binary header followed by scored vocabulary entries.</li>
+ * </ul>
+ *
+ * Byte sequences are kept as ISO-8859-1 strings so that every byte maps to one char.
+ */
+public class LlamaTokenizer {
+    private static final int LLAMA3_NUM_SPECIAL_TOKENS = 256;
+    private static final String[] LLAMA3_NAMED_SPECIAL_TOKENS = {
+        "<|begin_of_text|>",
+        "<|end_of_text|>",
+        "<|reserved_special_token_0|>",
+        "<|reserved_special_token_1|>",
+        "<|finetune_right_pad_id|>",
+        "<|step_id|>",
+        "<|start_header_id|>",
+        "<|end_header_id|>",
+        "<|eom_id|>",
+        "<|eot_id|>",
+        "<|python_tag|>",
+    };
+
+    // Llama 3 pre-tokenizer split pattern
+    private static final Pattern LLAMA3_PATTERN = Pattern.compile(
+        "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+            + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+    private static final Pattern SPECIAL_TOKEN_PATTERN = Pattern.compile("<\\|[A-Za-z0-9_]+\\|>");
+
+    private final boolean tiktoken;
+    private final Map<String, Integer> encoder;
+    private final Map<String, Integer> specialTokens;
+    private final float[] scores;  // BPE format only
+
+    private LlamaTokenizer(boolean tiktoken, Map<String, Integer> encoder,
+                           Map<String, Integer> specialTokens, float[] scores) {
+        this.tiktoken = tiktoken;
+        this.encoder = encoder;
+        this.specialTokens = specialTokens;
+        this.scores = scores;
+    }
+
+    public static LlamaTokenizer load(File file) throws IOException {
+        return load(Files.readAllBytes(file.toPath()));
+    }
+
+    public static LlamaTokenizer load(byte[] data) throws IOException {
+        return looksLikeTiktoken(data) ? loadTiktoken(data) : loadBpe(data);
+    }
+
+    public int getVocabSize() {
+        return encoder.size() + specialTokens.size();
+    }
+
+    public int countTokens(String text) {
+        return encode(text).size();
+    }
+
+    /**
+     * Encodes text without adding BOS/EOS. Llama 3 special tokens that appear literally in
+     * the text (e.g. {@code <|eot_id|>}) are encoded as single tokens.
+     */
+    public List<Integer> encode(String text) {
+        List<Integer> ids = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return ids;
+        }
+        if (!tiktoken) {
+            encodeBpe(text, ids);
+            return ids;
+        }
+
+        Matcher special = SPECIAL_TOKEN_PATTERN.matcher(text);
+        int start = 0;
+        while (special.find()) {
+            Integer id = specialTokens.get(special.group());
+            if (id == null) {
+                continue;
+            }
+            encodeOrdinary(text.substring(start, special.start()), ids);
+            ids.add(id);
+            start = special.end();
+        }
+        encodeOrdinary(text.substring(start), ids);
+        return ids;
+    }
+
+    private void encodeOrdinary(String text, List<Integer> ids) {
+        if (text.isEmpty()) {
+            return;
+        }
+        Matcher matcher = LLAMA3_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String piece = toByteString(matcher.group());
+            Integer id = encoder.get(piece);
+            if (id != null) {
+                ids.add(id);
+            } else {
+                bytePairMerge(piece, ids);
+            }
+        }
+    }
+
+    /**
+     * Tiktoken merge: repeatedly merges the adjacent pair with the lowest rank.
+     */
+    private void bytePairMerge(String piece, List<Integer> ids) {
+        List<String> parts = new ArrayList<>(piece.length());
+        for (int i = 0; i < piece.length(); i++) {
+            parts.add(piece.substring(i, i + 1));
+        }
+
+        while (parts.size() > 1) {
+            int bestIndex = -1;
+            int bestRank = Integer.MAX_VALUE;
+            for (int i = 0; i < parts.size() - 1; i++) {
+                Integer rank = encoder.get(parts.get(i) + parts.get(i + 1));
+                if (rank != null && rank < bestRank) {
+                    bestRank = rank;
+                    bestIndex = i;
+                }
+            }
+            if (bestIndex < 0) {
+                break;
+            }
+            parts.set(bestIndex, parts.get(bestIndex) + parts.get(bestIndex + 1));
+            parts.remove(bestIndex + 1);
+        }
+
+        for (String part : parts) {
+            Integer id = encoder.get(part);
+            // Every single byte is in a complete vocabulary; count unknown bytes as one token
+            ids.add(id != null ? id : -1);
+        }
+    }
+
+    /**
+     * llama2.c style BPE: dummy prefix, per-codepoint lookup with byte fallback, then
+     * repeatedly merges the adjacent pair with the highest score.
+     */
+    private void encodeBpe(String text, List<Integer> ids) {
+        List<String> parts = new ArrayList<>();
+        Integer space = encoder.get(" ");
+        if (space != null) {
+            parts.add(" ");
+        }
+
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            String codePointBytes = toByteString(new String(Character.toChars(codePoint)));
+            if (encoder.containsKey(codePointBytes)) {
+                parts.add(codePointBytes);
+            } else {
+                // Byte fallback: each byte becomes its own <0xXX> token
+                for (int b = 0; b < codePointBytes.length(); b++) {
+                    parts.add("\u0000byte" + (int) codePointBytes.charAt(b));
+                }
+            }
+            i += Character.charCount(codePoint);
+        }
+
+        while (parts.size() > 1) {
+            int bestIndex = -1;
+            float bestScore = -Float.MAX_VALUE;
+            for (int i = 0; i < parts.size() - 1; i++) {
+                Integer id = encoder.get(parts.get(i) + parts.get(i + 1));
+                if (id != null && scores[id] > bestScore) {
+                    bestScore = scores[id];
+                    bestIndex = i;
+                }
+            }
+            if (bestIndex < 0) {
+                break;
+            }
+            parts.set(bestIndex, parts.get(bestIndex) + parts.get(bestIndex + 1));
+            parts.remove(bestIndex + 1);
+        }
+
+        for (String part : parts) {
+            if (part.startsWith("\u0000byte")) {
+                ids.add(Integer.parseInt(part.substring(5)) + 3);
+            } else {
+                ids.add(encoder.get(part));
+            }
+        }
+    }
+
+    private static String toByteString(String text) {
+        return new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean looksLikeTiktoken(byte[] data) {
+        int end = 0;
+        while (end < data.length && end < 1024 && data[end] != '\n') {
+            end++;
+        }
+        String firstLine = new String(data, 0, end, StandardCharsets.ISO_8859_1).trim();
+        return firstLine.matches("[A-Za-z0-9+/=]+ [0-9]+");
+    }
+
+    private static LlamaTokenizer loadTiktoken(byte[] data) throws IOException {
+        Map<String, Integer> encoder = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(data), StandardCharsets.ISO_8859_1))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new IOException("Invalid tiktoken line: " + line);
+                }
+                byte[] token = Base64.getDecoder().decode(line.substring(0, space));
+                int rank = Integer.parseInt(line.substring(space + 1));
+                encoder.put(new String(token, StandardCharsets.ISO_8859_1), rank);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid tiktoken file", e);
+        }
+
+        Map<String, Integer> specialTokens = new HashMap<>();
+        int nextId = encoder.size();
+        for (String token : LLAMA3_NAMED_SPECIAL_TOKENS) {
+            specialTokens.put(token, nextId++);
+        }
+        for (int i = 2; specialTokens.size() < LLAMA3_NUM_SPECIAL_TOKENS; i++) {
+            String token = "<|reserved_special_token_" + i + "|>";
+            if (!specialTokens.containsKey(token)) {
+                specialTokens.put(token, nextId++);
+            }
+        }
+        return new LlamaTokenizer(true, encoder, specialTokens, null);
+    }
+
+    private static LlamaTokenizer loadBpe(byte[] data) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            int vocabSize = buffer.getInt();
+            buffer.getInt();  // BOS id
+            buffer.getInt();  // EOS id
+            buffer.getInt();  // Max token length
+            if (vocabSize <= 0) {
+                throw new IOException("Invalid BPE vocabulary size: " + vocabSize);
+            }
+
+            Map<String, Integer> encoder = new HashMap<>(vocabSize * 2);
+            float[] scores = new float[vocabSize];
+            for (int i = 0; i < vocabSize; i++) {
+                scores[i] = buffer.getFloat();
+                int length = buffer.getInt();
+                byte[] token = new byte[length];
+                buffer.get(token);
+                encoder.putIfAbsent(new String(token, StandardCharsets.ISO_8859_1), i);
+            }
+            return new LlamaTokenizer(false, encoder, new HashMap<>(), scores);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid BPE tokenizer file", e);
+        }
+    }
+}
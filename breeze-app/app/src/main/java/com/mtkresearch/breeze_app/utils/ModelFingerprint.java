@@ -0,0 +1,110 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.content.pm.PackageInfoCompat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Identifies a model file, app build and device for results that stay valid until one of
+ * them changes (backend profiles, self-test verdicts).
+ *
+ * Hashing a multi-GB model in full would take seconds, so the hash covers the file size,
+ * modification time and the first and last megabyte of the file.
+ */
+public class ModelFingerprint {
+    private static final String TAG = "ModelFingerprint";
+    private static final int SAMPLE_BYTES = 1024 * 1024;
+
+    /**
+     * Returns a fingerprint of the model file, or "missing" if it cannot be read.
+     */
+    public static String of(String path) {
+        if (path == null) {
+            return "missing";
+        }
+        File file = new File(path);
+        if (!file.isFile()) {
+            return "missing";
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long length = raf.length();
+            digest.update((length + ":" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+
+            byte[] buffer = new byte[(int) Math.min(SAMPLE_BYTES, length)];
+            raf.readFully(buffer);
+            digest.update(buffer);
+            if (length > SAMPLE_BYTES) {
+                raf.seek(Math.max(SAMPLE_BYTES, length - SAMPLE_BYTES));
+                int tail = (int) (length - raf.getFilePointer());
+                raf.readFully(buffer, 0, tail);
+                digest.update(buffer, 0, tail);
+            }
+            return toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.w(TAG, "Error fingerprinting " + path, e);
+            return "missing";
+        }
+    }
+
+    /**
+     * Returns a combined fingerprint of every file in a directory, e.g. the MTK config and
+     * the model files next to it, or "missing" if it has no files.
+     */
+    public static String ofDirectory(String path) {
+        File[] files = path != null ? new File(path).listFiles(File::isFile) : null;
+        if (files == null || files.length == 0) {
+            return "missing";
+        }
+        Arrays.sort(files);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (File file : files) {
+                digest.update((file.getName() + "=" + of(file.getPath()) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            Log.w(TAG, "Error fingerprinting " + path, e);
+            return "missing";
+        }
+    }
+
+    /**
+     * Returns the app version name and code, e.g. "0.3.1-breeze(1)".
+     */
+    public static String getAppVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.versionName + "(" + PackageInfoCompat.getLongVersionCode(info) + ")";
+        } catch (PackageManager.NameNotFoundException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * Returns an identifier of the device and OS build.
+     */
+    public static String getDeviceId() {
+        return Build.FINGERPRINT;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
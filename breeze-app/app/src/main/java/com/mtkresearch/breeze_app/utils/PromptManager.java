@@ -1,9 +1,12 @@
 package com.mtkresearch.breeze_app.utils;
 
 import android.content.Context;
+import android.util.Log;
 import com.executorch.ModelType;
 import com.executorch.PromptFormat;
 import com.mtkresearch.breeze_app.MainActivity;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -12,11 +15,12 @@ import java.util.ArrayList;
  * and conversation context handling.
  */
 public class PromptManager {
+    private static final String TAG = "PromptManager";
     public static final int DEFAULT_HISTORY_LOOKBACK = 20;
     public static final int MAX_SEQUENCE_LENGTH = 2048;  // Maximum sequence length for the model
-    private static final double TOKENS_PER_CHAR_ESTIMATE = 0.4;  // Rough estimate of tokens per character
     
     private static Context appContext;
+    private static volatile TokenCounter tokenCounter;
     
     public static void initialize(Context context) {
         appContext = context.getApplicationContext();
@@ -27,20 +31,52 @@ public class PromptManager {
      */
     public static String formatCompletePrompt(String userMessage, List<ChatMessage> conversationHistory, ModelType modelType) {
         // 1. Get system prompt with template
-        String systemPrompt = PromptFormat.getSystemPromptTemplate(modelType)
-                .replace(PromptFormat.SYSTEM_PLACEHOLDER, PromptFormat.DEFAULT_SYSTEM_PROMPT);
+        String systemPrompt = getSystemPrompt(modelType);
                 
         // 2. Get conversation history
         String history = getFormattedConversationHistory(conversationHistory, modelType);
         
         // 3. Format user message using template
-        String userPrompt = PromptFormat.getUserPromptTemplate(modelType)
-                .replace(PromptFormat.USER_PLACEHOLDER, userMessage);
+        String userPrompt = formatUserPrompt(userMessage, modelType);
         
         // Combine all parts
         return systemPrompt + history + userPrompt;
     }
+
+    /**
+     * Formats a complete prompt around history that was already selected and formatted,
+     * e.g. by {@link ContextWindowManager#buildHistory}.
+     */
+    public static String formatPromptWithHistory(String userMessage, String formattedHistory, ModelType modelType) {
+        return getSystemPrompt(modelType) + formattedHistory + formatUserPrompt(userMessage, modelType);
+    }
+
+    /**
+     * Formats the new user message, ending with the header the model answers after.
+     */
+    public static String formatUserPrompt(String userMessage, ModelType modelType) {
+        return PromptFormat.getUserPromptTemplate(modelType)
+                .replace(PromptFormat.USER_PLACEHOLDER, userMessage);
+    }
+
+    /**
+     * Formats one completed turn of the conversation history.
+     */
+    public static String formatTurn(String userMessage, String assistantMessage, ModelType modelType) {
+        return PromptFormat.getConversationFormat(modelType)
+                .replace(PromptFormat.USER_PLACEHOLDER, userMessage)
+                .replace(PromptFormat.ASSISTANT_PLACEHOLDER, assistantMessage);
+    }
     
+    /**
+     * Gets the system prompt wrapped in the model's template. This is the constant prefix
+     * of every prompt built by {@link #formatCompletePrompt}.
+     */
+    public static String getSystemPrompt(ModelType modelType) {
+        return PromptFormat.getSystemPromptTemplate(modelType)
+                .replace(PromptFormat.SYSTEM_PLACEHOLDER, PromptFormat.DEFAULT_SYSTEM_PROMPT);
+    }
+
     /**
      * Formats the conversation history with proper turn structure and lookback window.
      */
@@ -65,22 +101,70 @@ public class PromptManager {
         }
 
         StringBuilder history = new StringBuilder();
-        String conversationFormat = PromptFormat.getConversationFormat(modelType);
-        String currentFormat = conversationFormat;
+        String userText = null;
         
         for (ChatMessage message : recentMessages) {
             if (message.isUser()) {
-                currentFormat = currentFormat.replace(PromptFormat.USER_PLACEHOLDER, message.getText());
-            } else {
-                currentFormat = currentFormat.replace(PromptFormat.ASSISTANT_PLACEHOLDER, message.getText());
-                history.append(currentFormat);
-                currentFormat = conversationFormat;
+                if (userText == null) {
+                    userText = message.getText();
+                }
+            } else if (userText != null) {
+                history.append(formatTurn(userText, message.getText(), modelType));
+                userText = null;
             }
         }
         
         return history.toString();
     }
     
+    /**
+     * Gets the shared token counter backed by the model's tokenizer.bin. Until the tokenizer
+     * can be loaded, a character-based counter is returned and loading is retried next time.
+     */
+    public static TokenCounter getTokenCounter(Context context) {
+        TokenCounter counter = tokenCounter;
+        if (counter != null) {
+            return counter;
+        }
+        synchronized (PromptManager.class) {
+            if (tokenCounter != null) {
+                return tokenCounter;
+            }
+            String turnDelimiter = PromptFormat.getStopToken(ModelType.LLAMA_3_2);
+            File tokenizerFile = new File(AppConstants.getTokenizerPath(context));
+            if (tokenizerFile.exists()) {
+                try {
+                    long start = System.currentTimeMillis();
+                    LlamaTokenizer tokenizer = LlamaTokenizer.load(tokenizerFile);
+                    Log.d(TAG, String.format("Loaded tokenizer with %d tokens in %d ms",
+                        tokenizer.getVocabSize(), System.currentTimeMillis() - start));
+                    tokenCounter = new TokenCounter(tokenizer, turnDelimiter, TokenCounter.DEFAULT_CACHE_SIZE);
+                    return tokenCounter;
+                } catch (IOException | OutOfMemoryError e) {
+                    Log.e(TAG, "Failed to load tokenizer, falling back to character estimates", e);
+                }
+            } else {
+                Log.w(TAG, "Tokenizer not found at " + tokenizerFile.getAbsolutePath());
+            }
+            return new TokenCounter(null, turnDelimiter, 0);
+        }
+    }
+
+    /**
+     * Counts the tokens of a formatted prompt (exact when the tokenizer is available).
+     */
+    public static int countTokens(Context context, String text) {
+        return getTokenCounter(context).countTokens(text);
+    }
+
+    /**
+     * Gets the number of prompt tokens that fit in the context window while leaving room
+     * for the minimum response length.
+     */
+    public static int getMaxPromptTokens(Context context) {
+        return AppConstants.getLLMContextWindow(context) - AppConstants.getLLMMinOutputLength(context);
+    }
+
     /**
      * Gets the stop token for the specified model type.
      */
@@ -0,0 +1,54 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Remembers engine self-tests that passed, so they are not repeated on every launch.
+ *
+ * A verdict is stored per engine in GAISettings together with the key it was measured for:
+ * the model fingerprint, the backend and the app version. The test is skipped while the key
+ * matches. Only passing verdicts are kept; a backend that fails its test is not used, so it
+ * is simply tested again next time. A runtime failure clears the verdict, so the next
+ * initialization tests the engine again.
+ */
+public class SelfTestCache {
+    private static final String TAG = "SelfTestCache";
+
+    /**
+     * Builds the key a verdict is valid for. Models bundled as assets have no file to
+     * fingerprint; they change only with the app version, which is part of the key.
+     */
+    public static String buildKey(Context context, String modelPath, String backend) {
+        return ModelFingerprint.of(modelPath) + "|" + backend + "|" + ModelFingerprint.getAppVersion(context);
+    }
+
+    public static boolean hasPassed(Context context, String engine, String key) {
+        String stored = getPreferences(context).getString(getPreferenceKey(engine), null);
+        return key.equals(stored);
+    }
+
+    public static void recordPassed(Context context, String engine, String key) {
+        getPreferences(context).edit().putString(getPreferenceKey(engine), key).apply();
+    }
+
+    /**
+     * Clears the verdict after a runtime failure, so the next initialization tests again.
+     */
+    public static void invalidate(Context context, String engine) {
+        SharedPreferences prefs = getPreferences(context);
+        if (prefs.contains(getPreferenceKey(engine))) {
+            Log.w(TAG, "Clearing " + engine + " self-test verdict after a runtime failure");
+            prefs.edit().remove(getPreferenceKey(engine)).apply();
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(AppConstants.PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static String getPreferenceKey(String engine) {
+        return AppConstants.KEY_SELF_TEST_PREFIX + engine;
+    }
+}
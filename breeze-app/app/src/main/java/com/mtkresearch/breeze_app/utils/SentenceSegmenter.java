@@ -0,0 +1,90 @@
+package com.mtkresearch.breeze_app.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits streamed text into segments that can be spoken on their own, so speech can start
+ * before the whole response has been generated.
+ *
+ * Sentences end at 。！？!? and at a period followed by whitespace, so "3.14" stays intact.
+ * Clauses end at ，、；：,;: and line breaks, but a clause shorter than the minimum length is
+ * joined to the next one, since very short segments sound choppy. Segments without any
+ * letter or digit (e.g. "...") are dropped.
+ */
+public class SentenceSegmenter {
+    private static final String SENTENCE_ENDS = "。！？!?";
+    private static final String CLAUSE_ENDS = "，、；：,;:\n";
+
+    private final int minClauseLength;
+    private final StringBuilder pending = new StringBuilder();
+    private int scanned = 0;
+
+    public SentenceSegmenter(int minClauseLength) {
+        this.minClauseLength = minClauseLength;
+    }
+
+    /**
+     * Appends streamed text and returns the segments it completed, in order.
+     */
+    public List<String> feed(String text) {
+        pending.append(text);
+        List<String> segments = new ArrayList<>();
+        int segmentStart = 0;
+        for (int i = scanned; i < pending.length(); i++) {
+            char c = pending.charAt(i);
+            boolean end;
+            if (SENTENCE_ENDS.indexOf(c) >= 0) {
+                end = true;
+            } else if (c == '.') {
+                // Wait for the next character to tell a sentence end from a decimal point
+                if (i + 1 >= pending.length()) {
+                    scanned = i;
+                    return emit(segments, segmentStart);
+                }
+                end = Character.isWhitespace(pending.charAt(i + 1));
+            } else if (CLAUSE_ENDS.indexOf(c) >= 0) {
+                end = i + 1 - segmentStart >= minClauseLength;
+            } else {
+                end = false;
+            }
+            if (end) {
+                add(segments, pending.substring(segmentStart, i + 1));
+                segmentStart = i + 1;
+            }
+        }
+        scanned = pending.length();
+        return emit(segments, segmentStart);
+    }
+
+    /**
+     * Returns the text held back since the last boundary, e.g. at the end of the response.
+     */
+    public String flush() {
+        List<String> segments = new ArrayList<>();
+        add(segments, pending.toString());
+        reset();
+        return segments.isEmpty() ? "" : segments.get(0);
+    }
+
+    public void reset() {
+        pending.setLength(0);
+        scanned = 0;
+    }
+
+    private List<String> emit(List<String> segments, int consumed) {
+        pending.delete(0, consumed);
+        scanned -= consumed;
+        return segments;
+    }
+
+    private static void add(List<String> segments, String segment) {
+        String trimmed = segment.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (Character.isLetterOrDigit(trimmed.charAt(i))) {
+                segments.add(trimmed);
+                return;
+            }
+        }
+    }
+}
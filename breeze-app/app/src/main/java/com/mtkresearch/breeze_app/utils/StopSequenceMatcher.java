@@ -0,0 +1,155 @@
+package com.mtkresearch.breeze_app.utils;
+
+import com.executorch.ModelType;
+import com.executorch.PromptFormat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Incremental Aho-Corasick matcher for stop sequences in a streamed response.
+ *
+ * Text is fed token by token. Only the shortest suffix that could still grow into a stop
+ * sequence is held back; everything before it is returned as safe to display. Stop sequences
+ * split across tokens are detected as soon as their last character arrives.
+ */
+public class StopSequenceMatcher {
+    private static class Node {
+        final Map<Character, Node> next = new HashMap<>();
+        final int depth;
+        Node fail;
+        int matchLength;  // Longest stop sequence ending at this node, 0 if none
+
+        Node(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    private final Node root = new Node(0);
+    private final StringBuilder held = new StringBuilder();
+    private Node state = root;
+    private String matchedSequence;
+
+    public StopSequenceMatcher(String... stopSequences) {
+        List<String> sequences = new ArrayList<>();
+        for (String sequence : stopSequences) {
+            if (sequence != null && !sequence.isEmpty()) {
+                sequences.add(sequence);
+            }
+        }
+        build(sequences);
+    }
+
+    public static StopSequenceMatcher forModel(ModelType modelType) {
+        return new StopSequenceMatcher(PromptFormat.getStopSequences(modelType));
+    }
+
+    /**
+     * Feeds the next token and returns the text that can safely be emitted. Once a stop
+     * sequence has matched, the text before it is returned and all further input is ignored.
+     */
+    public String feed(String token) {
+        if (token == null || token.isEmpty() || isMatched()) {
+            return "";
+        }
+
+        StringBuilder safe = new StringBuilder();
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            held.append(c);
+            state = step(state, c);
+
+            if (state.matchLength > 0) {
+                int matchStart = held.length() - state.matchLength;
+                matchedSequence = held.substring(matchStart);
+                safe.append(held, 0, matchStart);
+                held.setLength(0);
+                state = root;
+                return safe.toString();
+            }
+
+            // Anything older than the current partial match can no longer be part of one
+            int release = held.length() - state.depth;
+            if (release > 0) {
+                safe.append(held, 0, release);
+                held.delete(0, release);
+            }
+        }
+        return safe.toString();
+    }
+
+    /**
+     * Returns the held-back text at the end of the stream, when no stop sequence matched.
+     */
+    public String flush() {
+        String rest = held.toString();
+        held.setLength(0);
+        state = root;
+        return rest;
+    }
+
+    public boolean isMatched() {
+        return matchedSequence != null;
+    }
+
+    public String getMatchedSequence() {
+        return matchedSequence;
+    }
+
+    public void reset() {
+        held.setLength(0);
+        state = root;
+        matchedSequence = null;
+    }
+
+    private static Node step(Node node, char c) {
+        while (true) {
+            Node next = node.next.get(c);
+            if (next != null) {
+                return next;
+            }
+            if (node.fail == null) {
+                return node;  // Root
+            }
+            node = node.fail;
+        }
+    }
+
+    private void build(List<String> sequences) {
+        for (String sequence : sequences) {
+            Node node = root;
+            for (int i = 0; i < sequence.length(); i++) {
+                char c = sequence.charAt(i);
+                Node next = node.next.get(c);
+                if (next == null) {
+                    next = new Node(node.depth + 1);
+                    node.next.put(c, next);
+                }
+                node = next;
+            }
+            node.matchLength = sequence.length();
+        }
+
+        // Breadth-first pass to link each node to its longest proper suffix in the trie
+        Queue<Node> queue = new ArrayDeque<>();
+        for (Node child : root.next.values()) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+                Node child = entry.getValue();
+                child.fail = step(node.fail, entry.getKey());
+                if (child.matchLength == 0) {
+                    child.matchLength = child.fail.matchLength;
+                }
+                queue.add(child);
+            }
+        }
+    }
+}
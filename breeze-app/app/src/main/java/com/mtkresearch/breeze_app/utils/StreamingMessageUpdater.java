@@ -0,0 +1,104 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Delivers streamed tokens to a chat message at most once per display frame.
+ *
+ * Tokens may arrive on any thread; they are buffered and flushed on the next Choreographer
+ * frame as a single append-only payload, so the message view is neither rebuilt nor
+ * re-laid out once per token.
+ */
+public class StreamingMessageUpdater implements Choreographer.FrameCallback {
+    private final ChatMessageAdapter adapter;
+    private final RecyclerView recyclerView;
+    private final ChatMessage message;
+    private final Choreographer choreographer;
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean frameScheduled = false;
+    private boolean finished = false;
+    private boolean hasFlushed = false;
+
+    @MainThread
+    public StreamingMessageUpdater(ChatMessageAdapter adapter, RecyclerView recyclerView, ChatMessage message) {
+        this.adapter = adapter;
+        this.recyclerView = recyclerView;
+        this.message = message;
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Buffers a token and schedules a flush for the next frame. Safe to call from any thread.
+     */
+    public void onToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        synchronized (pending) {
+            if (finished) {
+                return;
+            }
+            pending.append(token);
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+        }
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        flush();
+    }
+
+    /**
+     * Flushes any buffered tokens immediately and stops accepting new ones.
+     */
+    @MainThread
+    public void finish() {
+        choreographer.removeFrameCallback(this);
+        flush();
+        synchronized (pending) {
+            finished = true;
+        }
+    }
+
+    @MainThread
+    private void flush() {
+        long trace = Tracer.begin("ui.flushTokens");
+        try {
+            flushPending();
+        } finally {
+            Tracer.end(trace);
+        }
+    }
+
+    @MainThread
+    private void flushPending() {
+        String chunk;
+        synchronized (pending) {
+            frameScheduled = false;
+            if (pending.length() == 0) {
+                return;
+            }
+            chunk = pending.toString();
+            pending.setLength(0);
+        }
+
+        if (!hasFlushed) {
+            // The first chunk replaces the placeholder, which needs a full rebind
+            hasFlushed = true;
+            message.updateText(chunk);
+            adapter.notifyMessageChanged(message);
+        } else {
+            message.appendText(chunk);
+            adapter.notifyMessageAppended(message, chunk);
+        }
+        UiUtils.scrollToLatestMessage(recyclerView, adapter.getItemCount(), false);
+    }
+}
@@ -0,0 +1,85 @@
+package com.mtkresearch.breeze_app.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts tokens with a {@link LlamaTokenizer}, caching per-segment counts in an LRU so that
+ * history turns are only tokenized once. Prompts are split after every turn delimiter; the
+ * Llama 3 tokenizer never merges across special tokens, so segment counts add up exactly.
+ *
+ * Falls back to one token per character (a safe over-estimate) when no tokenizer is loaded.
+ */
+public class TokenCounter {
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final LlamaTokenizer tokenizer;
+    private final String turnDelimiter;
+    private final Map<String, Integer> cache;
+    private long hits = 0;
+    private long misses = 0;
+
+    public TokenCounter(LlamaTokenizer tokenizer, String turnDelimiter, int cacheSize) {
+        this.tokenizer = tokenizer;
+        this.turnDelimiter = turnDelimiter;
+        this.cache = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public boolean isExact() {
+        return tokenizer != null;
+    }
+
+    /**
+     * Counts the tokens of a full prompt, reusing cached counts for unchanged turns.
+     */
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (tokenizer == null) {
+            return text.length();
+        }
+        if (turnDelimiter == null || turnDelimiter.isEmpty()) {
+            return countSegment(text);
+        }
+
+        int total = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int idx = text.indexOf(turnDelimiter, start);
+            int end = idx < 0 ? text.length() : idx + turnDelimiter.length();
+            total += countSegment(text.substring(start, end));
+            start = end;
+        }
+        return total;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private int countSegment(String segment) {
+        synchronized (this) {
+            Integer cached = cache.get(segment);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        int count = tokenizer.countTokens(segment);
+        synchronized (this) {
+            cache.put(segment, count);
+        }
+        return count;
+    }
+}
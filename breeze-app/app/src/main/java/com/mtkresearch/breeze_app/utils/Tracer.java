@@ -0,0 +1,186 @@
+package com.mtkresearch.breeze_app.utils;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records named spans of a chat turn in a preallocated ring buffer and exports them as
+ * Chrome trace JSON, which chrome://tracing and ui.perfetto.dev can open.
+ *
+ * Recording allocates nothing: span names must be string constants, each event claims a
+ * slot of fixed arrays, and the oldest events are overwritten once the buffer wraps.
+ * Spans opened with {@link #begin} are also android.os.Trace sections, so they show up in
+ * Perfetto system traces. Spans recorded after the fact with {@link #span}, such as a queue
+ * wait that starts on another thread, only appear in the exported trace.
+ */
+public final class Tracer {
+    private static final byte KIND_SPAN = 0;
+    private static final byte KIND_INSTANT = 1;
+    private static final String TRACE_DIR = "traces";
+
+    private static final int CAPACITY = AppConstants.TRACE_BUFFER_EVENTS;
+    private static final String[] names = new String[CAPACITY];
+    private static final byte[] kinds = new byte[CAPACITY];
+    private static final long[] startNs = new long[CAPACITY];
+    private static final long[] endNs = new long[CAPACITY];
+    private static final long[] threadIds = new long[CAPACITY];
+    private static final long[] sequences = new long[CAPACITY];
+    private static final AtomicLong nextSequence = new AtomicLong();
+
+    private static volatile boolean enabled = AppConstants.TRACE_ENABLED;
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Tracer.enabled = enabled;
+    }
+
+    /**
+     * Returns the current trace timestamp, for spans recorded later with {@link #span}.
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Opens a span on the current thread. Pass the returned token to {@link #end} on the
+     * same thread, in a finally block.
+     */
+    public static long begin(String name) {
+        if (!enabled) {
+            return -1;
+        }
+        Trace.beginSection(name);
+        return record(KIND_SPAN, name, now(), 0);
+    }
+
+    public static void end(long token) {
+        if (token < 0) {
+            return;
+        }
+        Trace.endSection();
+        int slot = (int) (token % CAPACITY);
+        if (sequences[slot] == token) {
+            endNs[slot] = now();
+        }
+    }
+
+    /**
+     * Records a span that was measured elsewhere, e.g. one that started on another thread.
+     */
+    public static void span(String name, long startNanos, long endNanos) {
+        if (enabled) {
+            record(KIND_SPAN, name, startNanos, endNanos);
+        }
+    }
+
+    /**
+     * Records a point in time, e.g. a decoded token.
+     */
+    public static void instant(String name) {
+        if (enabled) {
+            long timestamp = now();
+            record(KIND_INSTANT, name, timestamp, timestamp);
+        }
+    }
+
+    private static long record(byte kind, String name, long start, long end) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) (sequence % CAPACITY);
+        sequences[slot] = -1;  // Invalid while the slot is rewritten
+        names[slot] = name;
+        kinds[slot] = kind;
+        startNs[slot] = start;
+        endNs[slot] = end;
+        threadIds[slot] = Thread.currentThread().getId();
+        sequences[slot] = sequence;
+        return sequence;
+    }
+
+    public static void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences[i] = -1;
+        }
+    }
+
+    /**
+     * Writes the buffered events as Chrome trace JSON. Spans that are still open are left
+     * out. Events recorded during the export may or may not be included.
+     */
+    public static void exportChromeTrace(Writer writer) throws IOException {
+        int pid = Process.myPid();
+        long last = nextSequence.get();
+        long first = Math.max(0, last - CAPACITY);
+        boolean firstEvent = true;
+
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        for (long sequence = first; sequence < last; sequence++) {
+            int slot = (int) (sequence % CAPACITY);
+            String name = names[slot];
+            byte kind = kinds[slot];
+            long start = startNs[slot];
+            long end = endNs[slot];
+            long tid = threadIds[slot];
+            if (sequences[slot] != sequence || (kind == KIND_SPAN && end < start)) {
+                continue;
+            }
+
+            if (!firstEvent) {
+                writer.write(',');
+            }
+            firstEvent = false;
+            writer.write("{\"name\":");
+            writer.write(JSONObject.quote(name));
+            if (kind == KIND_SPAN) {
+                writer.write(",\"ph\":\"X\",\"dur\":");
+                writer.write(formatMicros(end - start));
+            } else {
+                writer.write(",\"ph\":\"i\",\"s\":\"t\"");
+            }
+            writer.write(",\"ts\":");
+            writer.write(formatMicros(start));
+            writer.write(",\"pid\":" + pid + ",\"tid\":" + tid + "}");
+        }
+        writer.write("]}");
+    }
+
+    /**
+     * Exports the trace to a timestamped file in the app's external files directory.
+     */
+    public static File exportToFile(Context context) throws IOException {
+        File directory = new File(context.getExternalFilesDir(null), TRACE_DIR);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "trace_" + timestamp + ".json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            exportChromeTrace(writer);
+        }
+        return file;
+    }
+
+    private static String formatMicros(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1000.0);
+    }
+}
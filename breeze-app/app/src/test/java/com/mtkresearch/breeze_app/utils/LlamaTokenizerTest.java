@@ -0,0 +1,99 @@
+package com.mtkresearch.breeze_app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Checks token counts against tokenizer_fixture.model, a tiktoken-format vocabulary with the
+ * 256 single bytes (ranks 0-255) followed by the merges
+ * "he", "ll", "llo", "hello", " w", "or", " wor", "ld", " world" (ranks 256-264).
+ */
+public class LlamaTokenizerTest {
+    private static final int BASE_VOCAB_SIZE = 265;
+    private static final String EOT = "<|eot_id|>";
+
+    private LlamaTokenizer tokenizer;
+
+    @Before
+    public void setUp() throws IOException {
+        tokenizer = LlamaTokenizer.load(readFixture("tokenizer_fixture.model"));
+    }
+
+    @Test
+    public void loadsBaseVocabularyAndSpecialTokens() {
+        assertEquals(BASE_VOCAB_SIZE + 256, tokenizer.getVocabSize());
+    }
+
+    @Test
+    public void mergesByRank() {
+        assertEquals(Arrays.asList(259, 264), tokenizer.encode("hello world"));
+        assertEquals(1, tokenizer.countTokens("hello"));
+    }
+
+    @Test
+    public void fallsBackToBytesWithoutMerges() {
+        // Two CJK characters are three UTF-8 bytes each
+        assertEquals(6, tokenizer.countTokens("你好"));
+    }
+
+    @Test
+    public void splitsDigitsIntoGroupsOfThree() {
+        assertEquals(5, tokenizer.countTokens("12345"));
+        assertEquals(Arrays.asList((int) '1', (int) '2', (int) '3', (int) '4', (int) '5'),
+            tokenizer.encode("12345"));
+    }
+
+    @Test
+    public void splitsNewlinesFromWords() {
+        // "hello" + "\n\n" (two bytes) + "w" "or" "ld"
+        assertEquals(Arrays.asList(259, 10, 10, (int) 'w', 261, 263), tokenizer.encode("hello\n\nworld"));
+    }
+
+    @Test
+    public void encodesSpecialTokensAsSingleTokens() {
+        assertEquals(Arrays.asList(BASE_VOCAB_SIZE, 259, BASE_VOCAB_SIZE + 9),
+            tokenizer.encode("<|begin_of_text|>hello" + EOT));
+        assertEquals(3, tokenizer.countTokens("<|start_header_id|>hello<|end_header_id|>"));
+    }
+
+    @Test
+    public void counterSumsTurnsAndCachesThem() {
+        TokenCounter counter = new TokenCounter(tokenizer, EOT, TokenCounter.DEFAULT_CACHE_SIZE);
+        assertTrue(counter.isExact());
+        assertEquals(4, counter.countTokens("hello" + EOT + "hello world"));
+        assertEquals(3, counter.countTokens("hello" + EOT + "x"));
+        assertEquals(1, counter.getHits());
+        assertEquals(3, counter.getMisses());
+    }
+
+    @Test
+    public void counterEstimatesWithoutTokenizer() {
+        TokenCounter counter = new TokenCounter(null, EOT, 0);
+        assertFalse(counter.isExact());
+        assertEquals("hello world".length(), counter.countTokens("hello world"));
+    }
+
+    private static byte[] readFixture(String name) throws IOException {
+        try (InputStream in = LlamaTokenizerTest.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing fixture: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}